@@ -0,0 +1,103 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.Map;
+
+// Compares a JMH JSON result against a baseline from an earlier commit and exits non-zero
+// when any benchmark got worse by more than the threshold (in percent).
+// A benchmark fails when it is more than the threshold worse and its score +/- scoreError doesn't overlap the
+// baseline's, so noise alone doesn't fail the build. It also fails, as NOISY, when it got worse, the ranges overlap
+// and its own error is wider than the threshold: such a run can't show a regression isn't there.
+// A missing baseline fails too. With bootstrap=true the result is merged into the baseline instead of checked,
+// replacing the benchmarks it ran and keeping the rest.
+// Usage: JmhRegressionCheck <result.json> <baseline.json> <thresholdPercent> [bootstrap]
+public class JmhRegressionCheck {
+
+    public static void main(String[] args) throws IOException {
+        Path result = Path.of(args[0]);
+        Path baseline = Path.of(args[1]);
+        double threshold = Double.parseDouble(args[2]);
+        boolean bootstrap = args.length > 3 && Boolean.parseBoolean(args[3]);
+        ObjectMapper objectMapper = new ObjectMapper();
+        if (bootstrap) {
+            Map<String, JsonNode> merged = Files.exists(baseline) ? scores(objectMapper.readTree(baseline.toFile())) : new TreeMap<>();
+            merged.putAll(scores(objectMapper.readTree(result.toFile())));
+            ArrayNode runs = objectMapper.createArrayNode().addAll(merged.values());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(baseline.toFile(), runs);
+            System.out.println("Recorded " + result + " as the baseline in " + baseline + "; commit it to start tracking");
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("No benchmark baseline at " + baseline + ". Run once with -Djmh.bootstrap=true on the main branch and commit it");
+            System.exit(1);
+        }
+        Map<String, JsonNode> baselineScores = scores(objectMapper.readTree(baseline.toFile()));
+        int failures = 0;
+        for (Map.Entry<String, JsonNode> entry : scores(objectMapper.readTree(result.toFile())).entrySet()) {
+            JsonNode before = baselineScores.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("NEW  %s%n", entry.getKey());
+                continue;
+            }
+            String verdict = verdict(entry.getValue(), before, threshold);
+            failures += verdict.equals("OK  ") ? 0 : 1;
+            System.out.printf("%s %s %+.1f%% (%.3f +/- %.3f -> %.3f +/- %.3f %s)%n", verdict, entry.getKey(),
+                    change(entry.getValue(), before), score(before), error(before),
+                    score(entry.getValue()), error(entry.getValue()),
+                    entry.getValue().path("primaryMetric").path("scoreUnit").asText());
+        }
+        if (failures > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%%, or were too noisy to tell%n", failures, threshold);
+            System.exit(1);
+        }
+    }
+
+    // Keyed by benchmark, mode and params so parameterised runs are compared like for like
+    private static Map<String, JsonNode> scores(JsonNode results) {
+        Map<String, JsonNode> scores = new TreeMap<>();
+        for (JsonNode run : results) {
+            String key = run.path("benchmark").asText() + " [" + run.path("mode").asText() + "]";
+            if (run.has("params")) {
+                key += " " + run.get("params");
+            }
+            scores.put(key, run);
+        }
+        return scores;
+    }
+
+    private static String verdict(JsonNode current, JsonNode baseline, double threshold) {
+        double change = change(current, baseline);
+        if (change <= 0) {
+            return "OK  ";
+        }
+        // The gap between the two ranges, on the worse side; positive when they don't overlap
+        double gap = Math.abs(score(current) - score(baseline)) - error(current) - error(baseline);
+        if (gap > 0) {
+            return change > threshold ? "FAIL" : "OK  ";
+        }
+        return error(current) / score(current) * 100 > threshold ? "NOISY" : "OK  ";
+    }
+
+    // Positive means worse: lower throughput, or higher time per operation
+    private static double change(JsonNode current, JsonNode baseline) {
+        double percent = (score(current) - score(baseline)) / score(baseline) * 100;
+        return "thrpt".equals(current.path("mode").asText()) ? -percent : percent;
+    }
+
+    private static double score(JsonNode run) {
+        return run.path("primaryMetric").path("score").asDouble();
+    }
+
+    // JMH writes NaN (as a string) when there was a single measurement
+    private static double error(JsonNode run) {
+        double error = run.path("primaryMetric").path("scoreError").asDouble(0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
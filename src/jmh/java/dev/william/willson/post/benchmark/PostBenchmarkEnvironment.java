@@ -0,0 +1,65 @@
+package dev.william.willson.post.benchmark;
+
+import dev.william.willson.Application;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The application context wired to a throwaway embedded PostgreSQL, seeded from data/posts.json
+final class PostBenchmarkEnvironment implements AutoCloseable {
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    private PostBenchmarkEnvironment(EmbeddedPostgres postgres, ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.context = context;
+    }
+
+    static PostBenchmarkEnvironment start(String... extraArgs) throws IOException {
+        return start(WebApplicationType.NONE, extraArgs);
+    }
+
+    // SERVLET starts Tomcat on a random port, see port()
+    static PostBenchmarkEnvironment start(WebApplicationType webApplicationType, String... extraArgs) throws IOException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.start();
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=",
+                "--spring.docker.compose.enabled=false",
+                "--server.port=0",
+                // Benchmarks push the server to saturation on purpose
+                "--posts.load-shedding.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.beans=WARN",
+                "--logging.level.org.springframework.context=WARN",
+                "--logging.level.org.springframework.data=WARN"
+        ));
+        args.addAll(List.of(extraArgs));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(webApplicationType)
+                .logStartupInfo(false)
+                .run(args.toArray(String[]::new));
+        return new PostBenchmarkEnvironment(postgres, context);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    int port() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
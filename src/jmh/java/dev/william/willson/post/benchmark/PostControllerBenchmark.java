@@ -0,0 +1,68 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.globalException.GlobalExceptionHandler;
+import dev.william.willson.post.PostController;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+// Full request handling (binding, validation, JSON, repository) minus the servlet container and network
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostControllerBenchmark {
+
+    private PostBenchmarkEnvironment environment;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setup() throws Exception {
+        environment = PostBenchmarkEnvironment.start();
+        mockMvc = MockMvcBuilders.standaloneSetup(environment.bean(PostController.class))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .setMessageConverters(new ByteArrayHttpMessageConverter(),
+                        new MappingJackson2HttpMessageConverter(environment.bean(ObjectMapper.class)))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        environment.close();
+    }
+
+    @Benchmark
+    public MvcResult findPostById() throws Exception {
+        return mockMvc.perform(get("/api/posts/{id}", 42)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findPage() throws Exception {
+        return mockMvc.perform(get("/api/posts").param("after", "0").param("limit", "20")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findAll() throws Exception {
+        return mockMvc.perform(get("/api/posts")).andReturn();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MvcResult updatePost() throws Exception {
+        return mockMvc.perform(put("/api/posts/{id}", 7)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"id":7,"userId":1,"title":"Benchmark title","body":"Benchmark body","version":null}
+                                """))
+                .andReturn();
+    }
+}
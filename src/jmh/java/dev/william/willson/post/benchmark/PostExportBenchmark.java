@@ -0,0 +1,86 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostExportFormat;
+import dev.william.willson.post.PostRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Rows per second out of the database and into bytes: the findAll() + Jackson path analytics jobs use today,
+// against the export formats. Output goes to a null stream, so only the server side is measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(PostExportBenchmark.TOTAL_ROWS)
+public class PostExportBenchmark {
+
+    static final int ROWS = 200_000;
+    // Seeded posts use ids 1-100
+    static final int TOTAL_ROWS = ROWS + 100;
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start();
+        postRepository = environment.bean(PostRepository.class);
+        objectMapper = environment.bean(ObjectMapper.class);
+        List<Post> batch = new ArrayList<>(1000);
+        for (int id = 1001; id < 1001 + ROWS; id++) {
+            batch.add(new Post(id, id % 1000, "Exported post " + id, "The body of post " + id + ", long enough to look like a real one.", null));
+            if (batch.size() == 1000) {
+                postRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        postRepository.insertAll(batch);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public void findAllJson() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), postRepository.findAll());
+    }
+
+    @Benchmark
+    public void exportNdjson() throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Post.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.createGenerator(OutputStream.nullOutputStream());
+        generator.setRootValueSeparator(null);
+        postRepository.streamAll(0, post -> {
+            try {
+                writer.writeValue(generator, post);
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.flush();
+    }
+
+    @Benchmark
+    public long exportCsv() {
+        return postRepository.copyOut(0, PostExportFormat.CSV, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long exportBinary() {
+        return postRepository.copyOut(0, PostExportFormat.BINARY, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,78 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The work behind GET /api/posts/{id} for a random post out of many, response bytes included:
+// - repository: every read goes to PostgreSQL (PostCache sized to nothing), then Jackson
+// - post-cache: every post held as a Post in PostCache, then Jackson
+// - hot-store: every post held as JSON in PostHotStore, off-heap
+// Heap still in use once everything is loaded is printed at setup; run with -prof gc for allocation and GC time.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PostHotStoreBenchmark {
+
+    @Param({"repository", "post-cache", "hot-store"})
+    public String tier;
+
+    @Param({"200000"})
+    public int posts;
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+    private PostHotStore postHotStore;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() throws Exception {
+        environment = PostBenchmarkEnvironment.start(
+                "--posts.cache.maximum-size=" + (tier.equals("post-cache") ? posts : 0),
+                "--posts.hot-store.enabled=" + tier.equals("hot-store"));
+        postRepository = environment.bean(PostRepository.class);
+        postHotStore = environment.bean(PostHotStore.class);
+        objectMapper = environment.bean(ObjectMapper.class);
+
+        List<Post> batch = new ArrayList<>();
+        for (int id = 1; id <= posts; id++) {
+            batch.add(new Post(id, id % 1000, "Post " + id, "Body of post " + id + ", a sentence or two long.", 0));
+            if (batch.size() == 1000) {
+                postRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        for (int id = 1; id <= posts; id++) {
+            lookup(id);
+        }
+        System.gc();
+        System.out.printf("%ntier=%s: %d MB heap in use with %d posts loaded%n", tier,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20, posts);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        environment.close();
+    }
+
+    @Benchmark
+    public byte[] findPostById() throws Exception {
+        return lookup(ThreadLocalRandom.current().nextInt(posts) + 1);
+    }
+
+    private byte[] lookup(int id) throws Exception {
+        if (tier.equals("hot-store")) {
+            return postHotStore.get(id, postRepository::findById).orElseThrow().json();
+        }
+        return objectMapper.writeValueAsBytes(postRepository.findById(id).orElseThrow());
+    }
+}
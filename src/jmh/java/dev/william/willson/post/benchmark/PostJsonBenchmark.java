@@ -0,0 +1,64 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostJsonModule;
+import dev.william.willson.post.Posts;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+// codec=jackson is Jackson's record handling, codec=direct adds PostJsonModule (posts.json.codec).
+// Add -prof gc to jmh.args for bytes allocated per operation (gc.alloc.rate.norm).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostJsonBenchmark {
+
+    @Param({"jackson", "direct"})
+    public String codec;
+
+    private ObjectMapper objectMapper;
+    private Post post;
+    private Posts posts;
+    private byte[] postJson;
+    private byte[] postsJson;
+
+    @Setup
+    public void setup() throws IOException {
+        // Configured like the ObjectMapper Spring Boot builds for the app
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        if (codec.equals("direct")) {
+            objectMapper.registerModule(new PostJsonModule());
+        }
+        try (InputStream inputStream = Post.class.getResourceAsStream("/data/posts.json")) {
+            postsJson = inputStream.readAllBytes();
+        }
+        posts = objectMapper.readValue(postsJson, Posts.class);
+        post = posts.posts().getFirst();
+        postJson = objectMapper.writeValueAsBytes(post);
+    }
+
+    @Benchmark
+    public byte[] serializePost() throws IOException {
+        return objectMapper.writeValueAsBytes(post);
+    }
+
+    @Benchmark
+    public Post deserializePost() throws IOException {
+        return objectMapper.readValue(postJson, Post.class);
+    }
+
+    @Benchmark
+    public byte[] serializePosts() throws IOException {
+        return objectMapper.writeValueAsBytes(posts);
+    }
+
+    @Benchmark
+    public Posts deserializePosts() throws IOException {
+        return objectMapper.readValue(postsJson, Posts.class);
+    }
+}
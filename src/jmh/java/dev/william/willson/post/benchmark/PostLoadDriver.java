@@ -0,0 +1,393 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostDataGenerator;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// HTTP load test over every endpoint of the posts API, with a weighted mix of requests.
+// Without --url it starts the application in this JVM against an embedded PostgreSQL, seeded with --posts synthetic
+// posts through PostDataLoader (posts.loader.synthetic-posts); the two then share the machine. To test an
+// application of its own, e.g. one started with the compose file's database, seed that with the same
+// posts.loader.synthetic-posts and pass its --url and --posts.
+// - open loop (--mode=open): requests are sent at --rate per second whatever the responses do
+// - closed loop (--mode=closed): --clients each send their next request when the last one returns, paced to
+//   --rate in total when it is given
+// Latency is measured from when a request was due to be sent, not from when it went out, so a stalled server is
+// charged for the requests it kept waiting (coordinated omission). An unpaced closed loop has no due times: its
+// latencies are service times only.
+// Prints throughput and p50/p99/p99.9 per endpoint, and writes each endpoint's HdrHistogram percentile
+// distribution (.hgrm) to --output.
+// Usage: PostLoadDriver [--url=http://localhost:8080] [--posts=100000] [--mode=open|closed] [--rate=200]
+//        [--clients=16] [--duration=60s] [--warmup=10s] [--mix=get:40,search:10,...] [--hot-share=0.5]
+//        [--max-in-flight=1000] [--output=target/load-test] [--posts.*=... / --spring.*=... for the application]
+public class PostLoadDriver {
+
+    enum Endpoint {
+        GET("get", 40), PAGE("page", 8), ALL("all", 0), IDS("ids", 5), BATCH_GET("batch-get", 3), STREAM("stream", 1),
+        EXPORT("export", 1), SEARCH("search", 8), CREATE("create", 6), BULK("bulk", 1), UPDATE("update", 8),
+        PATCH("patch", 5), DELETE("delete", 5), USER_POSTS("user-posts", 6), USER_COUNT("user-count", 2),
+        POST_COUNTS("post-counts", 1);
+
+        // GET /api/posts returns the whole table, so it is left out unless asked for
+        final String key;
+        final int defaultWeight;
+
+        Endpoint(String key, int defaultWeight) {
+            this.key = key;
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    private static final class Stats {
+        final Histogram latency = new ConcurrentHistogram(3);
+        final LongAdder failures = new LongAdder();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final int posts;
+    private final double hotShare;
+    private final Endpoint[] picks;
+    private final Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+    private final PostDataGenerator generator;
+    private final AtomicInteger nextId;
+    private final ConcurrentLinkedQueue<Integer> created = new ConcurrentLinkedQueue<>();
+    private volatile long recordFrom;
+
+    private PostLoadDriver(String baseUrl, int posts, double hotShare, Map<Endpoint, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.posts = posts;
+        this.hotShare = hotShare;
+        List<Endpoint> picks = new ArrayList<>();
+        mix.forEach((endpoint, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                picks.add(endpoint);
+            }
+            if (weight > 0) {
+                stats.put(endpoint, new Stats());
+            }
+        });
+        if (picks.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no endpoint with a weight above 0");
+        }
+        this.picks = picks.toArray(Endpoint[]::new);
+        this.generator = new PostDataGenerator(System.nanoTime(), posts);
+        // Created posts get ids well clear of the seeded ones
+        this.nextId = new AtomicInteger(Math.max(posts, 0) + 1_000_000);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--posts.") || arg.startsWith("--spring.") || arg.startsWith("--server.")) {
+                appArgs.add(arg);
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+        int posts = Integer.parseInt(options.getOrDefault("posts", "100000"));
+        String mode = options.getOrDefault("mode", "open");
+        double rate = Double.parseDouble(options.getOrDefault("rate", mode.equals("open") ? "200" : "0"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "60s"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "1000"));
+        Path output = Path.of(options.getOrDefault("output", "target/load-test"));
+        Map<Endpoint, Integer> mix = mix(options.getOrDefault("mix", ""));
+
+        PostBenchmarkEnvironment environment = null;
+        String url = options.get("url");
+        if (url == null) {
+            // Devtools would otherwise restart main() in a classloader of its own
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            System.out.printf("Seeding %d synthetic posts into an embedded PostgreSQL...%n", posts);
+            appArgs.addFirst("--posts.loader.synthetic-posts=" + posts);
+            environment = PostBenchmarkEnvironment.start(WebApplicationType.SERVLET, appArgs.toArray(String[]::new));
+            url = "http://localhost:" + environment.port();
+        }
+        try {
+            PostLoadDriver driver = new PostLoadDriver(url, posts, Double.parseDouble(options.getOrDefault("hot-share", "0.5")), mix);
+            String description = switch (mode) {
+                case "open" -> {
+                    driver.runOpen(rate, maxInFlight, warmup, duration);
+                    yield "open loop at %.0f req/s".formatted(rate);
+                }
+                case "closed" -> {
+                    driver.runClosed(clients, rate, warmup, duration);
+                    yield "closed loop, %d clients%s".formatted(clients,
+                            rate > 0 ? ", paced to %.0f req/s".formatted(rate) : ", unpaced (service times, not corrected)");
+                }
+                default -> throw new IllegalArgumentException("Unknown mode: " + mode + " (expected open or closed)");
+            };
+            driver.report(description, duration, output);
+        } finally {
+            if (environment != null) {
+                environment.close();
+            }
+        }
+    }
+
+    // Endpoints not named in --mix keep their default weight; name one with weight 0 to leave it out
+    private static Map<Endpoint, Integer> mix(String spec) {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            mix.put(endpoint, endpoint.defaultWeight);
+        }
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split(":", 2);
+            Endpoint endpoint = null;
+            for (Endpoint candidate : Endpoint.values()) {
+                if (candidate.key.equals(parts[0].trim())) {
+                    endpoint = candidate;
+                }
+            }
+            if (endpoint == null || parts.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + entry);
+            }
+            mix.put(endpoint, Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    private void runOpen(double rate, int maxInFlight, Duration warmup, Duration duration) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        recordFrom = start + warmup.toNanos();
+        long end = recordFrom + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long due = start + (long) (i * 1e9 / rate);
+                if (due >= end) {
+                    break;
+                }
+                sleepUntil(due);
+                // Waiting here still counts against the request, its due time doesn't move
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        send(due);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private void runClosed(int clients, double rate, Duration warmup, Duration duration) {
+        long start = System.nanoTime();
+        recordFrom = start + warmup.toNanos();
+        long end = recordFrom + duration.toNanos();
+        long interval = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                // Paced clients start spread over one interval rather than all at once
+                long offset = interval * c / clients;
+                executor.execute(() -> {
+                    long due = start + offset;
+                    while (due < end) {
+                        if (interval > 0) {
+                            sleepUntil(due);
+                        } else {
+                            due = System.nanoTime();
+                        }
+                        send(due);
+                        due += interval;
+                    }
+                });
+            }
+        }
+    }
+
+    private static void sleepUntil(long due) {
+        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void send(long due) {
+        Endpoint endpoint = picks[ThreadLocalRandom.current().nextInt(picks.length)];
+        Stats endpointStats = stats.get(endpoint);
+        try {
+            HttpResponse<Void> response = httpClient.send(request(endpoint), HttpResponse.BodyHandlers.discarding());
+            if (due >= recordFrom) {
+                endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                endpointStats.statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+            }
+        } catch (IOException | InterruptedException e) {
+            if (due >= recordFrom) {
+                endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                endpointStats.failures.increment();
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private HttpRequest request(Endpoint endpoint) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (endpoint) {
+            case GET -> get("/api/posts/" + postId());
+            case PAGE -> get("/api/posts?after=" + random.nextInt(Math.max(1, posts)) + "&limit=20");
+            case ALL -> get("/api/posts");
+            case IDS -> get("/api/posts?ids=" + String.join(",", postIds(10).stream().map(String::valueOf).toList()));
+            case BATCH_GET -> post("/api/posts/batch-get", postIds(50));
+            // The tail of the table, as a client resuming an interrupted export would ask for
+            case STREAM -> HttpRequest.newBuilder(uri("/api/posts?after=" + Math.max(0, posts - 100)))
+                    .header("Accept", "application/x-ndjson").build();
+            case EXPORT -> get("/api/posts/export?format=csv&after=" + Math.max(0, posts - 100));
+            case SEARCH -> get("/api/posts/search?limit=20&q=" + word() + "+" + word());
+            case CREATE -> post("/api/posts", newPost(nextId.getAndIncrement()));
+            case BULK -> {
+                List<Post> batch = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    batch.add(newPost(nextId.getAndIncrement()));
+                }
+                yield post("/api/posts/bulk", batch);
+            }
+            case UPDATE -> {
+                Post post = newPost(postId());
+                yield HttpRequest.newBuilder(uri("/api/posts/" + post.id()))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(post))).build();
+            }
+            case PATCH -> HttpRequest.newBuilder(uri("/api/posts/" + postId()))
+                    .header("Content-Type", "application/merge-patch+json")
+                    .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(
+                            objectMapper.writeValueAsBytes(Map.of("title", newPost(0).title())))).build();
+            // Mostly posts this run created, so the seeded ones the reads go for stay in place
+            case DELETE -> {
+                Integer id = created.poll();
+                yield HttpRequest.newBuilder(uri("/api/posts/" + (id != null ? id : postId()))).DELETE().build();
+            }
+            case USER_POSTS -> get("/api/users/" + userId() + "/posts?limit=20&view=" + (random.nextBoolean() ? "full" : "summary"));
+            case USER_COUNT -> get("/api/users/" + userId() + "/posts/count");
+            case POST_COUNTS -> get("/api/users/post-counts");
+        };
+    }
+
+    // hotShare of reads and writes go to the first 1% of ids, the rest anywhere
+    private int postId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bound = Math.max(1, random.nextDouble() < hotShare ? posts / 100 : posts);
+        return 1 + random.nextInt(bound);
+    }
+
+    private List<Integer> postIds(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(postId());
+        }
+        return ids;
+    }
+
+    private int userId() {
+        return 1 + ThreadLocalRandom.current().nextInt(PostDataGenerator.usersFor(posts));
+    }
+
+    private static String word() {
+        return PostDataGenerator.WORDS.get(ThreadLocalRandom.current().nextInt(PostDataGenerator.WORDS.size()));
+    }
+
+    private Post newPost(int id) {
+        Post post;
+        synchronized (generator) {
+            post = generator.next();
+        }
+        if (id > posts) {
+            created.add(id);
+        }
+        return new Post(id, post.userId(), post.title(), post.body(), null);
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).build();
+    }
+
+    private HttpRequest post(String path, Object body) throws IOException {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private void report(String description, Duration duration, Path output) throws IOException {
+        Files.createDirectories(output);
+        double seconds = duration.toNanos() / 1e9;
+        Histogram total = new Histogram(3);
+        System.out.printf("%n%s, %d posts, %s measured%n", description, posts, duration);
+        System.out.printf("%-12s %9s %9s %10s %10s %10s %10s  %s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "responses");
+        for (Map.Entry<Endpoint, Stats> entry : stats.entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            total.add(latency);
+            Map<Integer, Long> statuses = new TreeMap<>();
+            entry.getValue().statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+            String responses = statuses.toString() + (entry.getValue().failures.sum() > 0
+                    ? " failed=" + entry.getValue().failures.sum() : "");
+            print(entry.getKey().key, latency, seconds, responses);
+            write(output.resolve(entry.getKey().key + ".hgrm"), latency);
+        }
+        print("all", total, seconds, "");
+        write(output.resolve("all.hgrm"), total);
+        System.out.println("Percentile distributions written to " + output.toAbsolutePath());
+    }
+
+    private static void print(String name, Histogram latency, double seconds, String responses) {
+        Function<Double, Double> millis = percentile -> latency.getValueAtPercentile(percentile) / 1000.0;
+        System.out.printf("%-12s %9d %9.1f %10.2f %10.2f %10.2f %10.2f  %s%n", name, latency.getTotalCount(),
+                latency.getTotalCount() / seconds, millis.apply(50.0), millis.apply(99.0), millis.apply(99.9),
+                latency.getMaxValue() / 1000.0, responses);
+    }
+
+    // Values in milliseconds, the format HdrHistogram's plotter reads
+    private static void write(Path file, Histogram latency) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            latency.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
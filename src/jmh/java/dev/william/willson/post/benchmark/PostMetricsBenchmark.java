@@ -0,0 +1,47 @@
+package dev.william.willson.post.benchmark;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Limit;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the posts.repository timers. findById is a cache hit, so the interceptor is most of what it measures;
+// run with -prof gc to check that an instrumented call allocates no more than a plain one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PostMetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start("--posts.metrics.repository.enabled=" + metrics);
+        postRepository = environment.bean(PostRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public Optional<Post> findById() {
+        return postRepository.findById(42);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Post> findPage() {
+        return postRepository.findByIdGreaterThanOrderById(40, Limit.of(10));
+    }
+}
@@ -0,0 +1,85 @@
+package dev.william.willson.post.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// GET /api/posts over real HTTP with and without posts.page-cache, gzip accepted as a browser would.
+// SampleTime gives the p99; the CPU the whole process spent per request (client included, which is the same
+// in both runs) is printed after every iteration.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PostPageCacheBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pageCache;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private PostBenchmarkEnvironment environment;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private long cpuStart;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start(WebApplicationType.SERVLET,
+                "--posts.page-cache.enabled=" + pageCache);
+        httpClient = HttpClient.newHttpClient();
+        baseUrl = "http://localhost:" + environment.port();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        requests.set(0);
+        cpuStart = os.getProcessCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long count = requests.get();
+        if (count > 0) {
+            System.out.printf("%npage-cache=%s: %.1f us CPU per request%n",
+                    pageCache, (os.getProcessCpuTime() - cpuStart) / 1_000.0 / count);
+        }
+    }
+
+    // 20 of the first 100 ids at a random offset, like a client paging through the feed
+    @Benchmark
+    public int findPage() throws Exception {
+        return send("/api/posts?limit=20&after=" + ThreadLocalRandom.current().nextInt(80));
+    }
+
+    @Benchmark
+    public int findAll() throws Exception {
+        return send("/api/posts");
+    }
+
+    private int send(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Accept-Encoding", "gzip")
+                .build();
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        requests.incrementAndGet();
+        return status;
+    }
+}
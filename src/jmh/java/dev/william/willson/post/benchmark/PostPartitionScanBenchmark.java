@@ -0,0 +1,66 @@
+package dev.william.willson.post.benchmark;
+
+import dev.william.willson.post.PostRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Whole-table reads at 10M rows (override with -p rows=...), each call a single shot:
+// - plain: the unpartitioned post table
+// - partitioned-serial: 16 hash partitions, read with one query (posts.partition-scan.threads=1)
+// - partitioned-parallel: 16 hash partitions, read by 4 workers and merged in id order
+// Speed-up needs cores on both sides: the database's to scan partitions at once and this JVM's to merge.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PostPartitionScanBenchmark {
+
+    @Param({"plain", "partitioned-serial", "partitioned-parallel"})
+    public String layout;
+
+    @Param({"10000000"})
+    public int rows;
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start(
+                "--spring.profiles.active=" + (layout.equals("plain") ? "default" : "partitioned"),
+                "--posts.partition-scan.threads=" + (layout.equals("partitioned-parallel") ? 4 : 1),
+                "--posts.loader.enabled=false");
+        postRepository = environment.bean(PostRepository.class);
+        JdbcTemplate jdbcTemplate = environment.bean(JdbcTemplate.class);
+        // Straight into the table: the change feed and per-user counts play no part in a scan
+        jdbcTemplate.execute("ALTER TABLE post DISABLE TRIGGER USER");
+        jdbcTemplate.update("""
+                INSERT INTO post (id, user_id, title, body, version)
+                SELECT i, i % 10000, 'Post ' || i, 'Body of post ' || i || ', a sentence or two long.', 0
+                FROM generate_series(1, ?) AS i""", rows);
+        jdbcTemplate.execute("ALTER TABLE post ENABLE TRIGGER USER");
+        jdbcTemplate.execute("VACUUM ANALYZE post");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public long count() {
+        return postRepository.count();
+    }
+
+    // What GET /api/posts/export?format=ndjson and the hot store warm-up do with every row
+    @Benchmark
+    public void streamAll(Blackhole blackhole) {
+        postRepository.streamAll(0, blackhole::consume);
+    }
+}
@@ -0,0 +1,51 @@
+package dev.william.willson.post.benchmark;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostRepositoryBenchmark {
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+    private Post current;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start();
+        postRepository = environment.bean(PostRepository.class);
+        current = postRepository.findById(1).orElseThrow();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    // Served by PostCache after the first call
+    @Benchmark
+    public Optional<Post> findById() {
+        return postRepository.findById(42);
+    }
+
+    @Benchmark
+    public List<Post> findAll() {
+        return postRepository.findAll();
+    }
+
+    // Each save bumps the version, so keep the latest copy for the next optimistic-locking update
+    @Benchmark
+    @Threads(1)
+    public Post save() {
+        current = postRepository.save(new Post(current.id(), current.userId(), current.title(), current.body(), current.version()));
+        return current;
+    }
+}
@@ -0,0 +1,77 @@
+package dev.william.willson.post.benchmark;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostSearchHit;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Ranked full-text search against the exact-title lookup it replaces, on a table of synthetic posts
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostSearchBenchmark {
+
+    private static final String[] WORDS = {
+            "spring", "postgres", "index", "cache", "thread", "stream", "query", "latency",
+            "request", "server", "memory", "garbage", "batch", "cursor", "socket", "buffer"
+    };
+
+    @Param("1000000")
+    public int rows;
+
+    private PostBenchmarkEnvironment environment;
+    private PostRepository postRepository;
+    private String title;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start();
+        postRepository = environment.bean(PostRepository.class);
+        SplittableRandom random = new SplittableRandom(42);
+        List<Post> batch = new ArrayList<>(1000);
+        // Seeded posts use ids 1-100
+        for (int id = 1001; id < 1001 + rows; id++) {
+            batch.add(new Post(id, id % 1000, sentence(random, 4), sentence(random, 30), null));
+            if (batch.size() == 1000) {
+                postRepository.insertAll(batch);
+                batch.clear();
+            }
+        }
+        postRepository.insertAll(batch);
+        title = postRepository.findById(1001 + rows / 2).orElseThrow().title();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(1000));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public List<Post> findByTitle() {
+        return postRepository.findByTitle(title);
+    }
+
+    @Benchmark
+    public List<PostSearchHit> search() {
+        return postRepository.search(title, Float.POSITIVE_INFINITY, 0, 20, false);
+    }
+
+    @Benchmark
+    public List<PostSearchHit> searchWithHighlight() {
+        return postRepository.search(title, Float.POSITIVE_INFINITY, 0, 20, true);
+    }
+}
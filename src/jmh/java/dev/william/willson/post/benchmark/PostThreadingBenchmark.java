@@ -0,0 +1,64 @@
+package dev.william.willson.post.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Load test of platform vs virtual request threads: 256 concurrent clients over real HTTP against a
+// deliberately small connection pool, so most requests wait for the database. Compare the two
+// threading params in the JSON result; errors (503 from the permit timeout) are counted separately.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(256)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PostThreadingBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threading;
+
+    private PostBenchmarkEnvironment environment;
+    private HttpClient httpClient;
+    private String baseUrl;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = PostBenchmarkEnvironment.start(WebApplicationType.SERVLET,
+                "--spring.threads.virtual.enabled=" + threading.equals("virtual"),
+                "--spring.datasource.hikari.maximum-pool-size=4",
+                "--posts.db.max-concurrency=4",
+                "--posts.page-cache.enabled=false");
+        httpClient = HttpClient.newHttpClient();
+        baseUrl = "http://localhost:" + environment.port();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counts {
+        public long errors;
+    }
+
+    // The page cache is off, so every request goes to the database
+    @Benchmark
+    public int findPage(Counts counts) throws Exception {
+        int after = ThreadLocalRandom.current().nextInt(80);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/posts?limit=20&after=" + after)).build();
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200) {
+            counts.errors++;
+        }
+        return status;
+    }
+}
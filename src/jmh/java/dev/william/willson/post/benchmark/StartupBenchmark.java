@@ -0,0 +1,176 @@
+package dev.william.willson.post.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Cold start of the packaged application, each run in a fresh JVM against an embedded PostgreSQL:
+// - startup: JVM uptime when Spring Boot logs "Started Application", as reported by the application itself
+// - firstRequest: GET /api/posts/1 sent as soon as that line appears
+// Results are written in JMH's JSON format (single-shot, ms), so JmhRegressionCheck tracks them like any benchmark.
+// Usage: StartupBenchmark <target dir> <final name> <runs> <result.json>
+public class StartupBenchmark {
+
+    private static final Pattern STARTED = Pattern.compile("Started Application in [0-9.]+ seconds \\(process running for ([0-9.]+)\\)");
+
+    private record Variant(String name, Path jar, List<String> jvmArgs, List<String> appArgs) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path target = Path.of(args[0]);
+        String finalName = args[1];
+        int runs = Integer.parseInt(args[2]);
+        Path result = Path.of(args[3]);
+
+        List<Variant> variants = new ArrayList<>();
+        Path jar = target.resolve(finalName + ".jar");
+        variants.add(new Variant("default", jar, List.of(), List.of()));
+        variants.add(new Variant("prod", jar, List.of(), List.of("--spring.profiles.active=prod")));
+        // Built by -Pstartup; an archive older than the jar belongs to an earlier build and would measure the wrong code
+        Path archive = target.resolve("app/application.jsa");
+        if (Files.exists(archive) && Files.getLastModifiedTime(archive).compareTo(Files.getLastModifiedTime(jar)) >= 0) {
+            variants.add(new Variant("prod-aot-cds", target.resolve("app/" + finalName + ".jar"),
+                    List.of("-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off", "-Dspring.aot.enabled=true"),
+                    List.of("--spring.profiles.active=prod")));
+        } else {
+            System.out.println("No CDS archive from this build in " + archive.getParent() + "; build with -Pstartup to measure prod-aot-cds");
+        }
+
+        HttpClient httpClient = HttpClient.newHttpClient();
+        ArrayNode results = new ObjectMapper().createArrayNode();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.start()) {
+            // The prod profile expects the schema and data to be there already
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(postgres.getPostgresDatabase());
+            new JdbcTemplate(postgres.getPostgresDatabase())
+                    .update("INSERT INTO post (id, user_id, title, body, version) VALUES (1, 1, 'Startup', 'First request.', 0)");
+            String jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+
+            // Untimed: warms the page cache and this JVM's HTTP client
+            run(variants.getFirst(), jdbcUrl, httpClient);
+            for (Variant variant : variants) {
+                List<Double> startup = new ArrayList<>();
+                List<Double> firstRequest = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    double[] times = run(variant, jdbcUrl, httpClient);
+                    startup.add(times[0]);
+                    firstRequest.add(times[1]);
+                }
+                System.out.printf("%-13s startup %7.0f ms   first request %6.0f ms%n", variant.name(), mean(startup), mean(firstRequest));
+                results.add(result(StartupBenchmark.class.getName() + ".startup", variant.name(), startup));
+                results.add(result(StartupBenchmark.class.getName() + ".firstRequest", variant.name(), firstRequest));
+            }
+        }
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(result.toFile(), results);
+    }
+
+    // Returns {startup ms, first request ms}
+    private static double[] run(Variant variant, String jdbcUrl, HttpClient httpClient) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("--enable-preview");
+        command.addAll(variant.jvmArgs());
+        command.addAll(List.of("-jar", variant.jar().toString(),
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=",
+                "--spring.docker.compose.enabled=false",
+                "--server.port=" + port));
+        command.addAll(variant.appArgs());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try {
+            CompletableFuture<Double> started = new CompletableFuture<>();
+            Thread.ofVirtual().start(() -> watch(process, started));
+            double startup = started.get(2, TimeUnit.MINUTES);
+
+            long start = System.nanoTime();
+            HttpResponse<Void> response = httpClient.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/posts/1")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            double firstRequest = (System.nanoTime() - start) / 1e6;
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(variant.name() + ": first request answered " + response.statusCode());
+            }
+            return new double[]{startup, firstRequest};
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    // Keeps draining the output after the line is found, so the application never blocks on a full pipe
+    private static void watch(Process process, CompletableFuture<Double> started) {
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (started.isDone()) {
+                    continue;
+                }
+                output.add(line);
+                Matcher matcher = STARTED.matcher(line);
+                if (matcher.find()) {
+                    started.complete(Double.parseDouble(matcher.group(1)) * 1000);
+                }
+            }
+        } catch (IOException e) {
+            started.completeExceptionally(e);
+        }
+        started.completeExceptionally(new IllegalStateException("Application exited before it started:\n" + String.join("\n", output)));
+    }
+
+    private static ObjectNode result(String benchmark, String variant, List<Double> samples) {
+        ObjectNode node = new ObjectMapper().createObjectNode();
+        node.put("benchmark", benchmark);
+        node.put("mode", "ss");
+        node.put("forks", samples.size());
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("variant", variant);
+        node.putPOJO("params", params);
+        ObjectNode metric = node.putObject("primaryMetric");
+        metric.put("score", mean(samples));
+        metric.put("scoreError", standardError(samples));
+        metric.put("scoreUnit", "ms/op");
+        ArrayNode rawData = metric.putArray("rawData");
+        samples.forEach(sample -> rawData.addArray().add(sample));
+        return node;
+    }
+
+    private static double mean(List<Double> samples) {
+        return samples.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+    }
+
+    private static double standardError(List<Double> samples) {
+        double mean = mean(samples);
+        double variance = samples.stream().mapToDouble(sample -> (sample - mean) * (sample - mean)).sum()
+                / Math.max(1, samples.size() - 1);
+        return Math.sqrt(variance / samples.size());
+    }
+}
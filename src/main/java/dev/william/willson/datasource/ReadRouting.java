@@ -0,0 +1,47 @@
+package dev.william.willson.datasource;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// Per-thread switch that sends read-only work to the primary too, for clients that have just written
+// and must see their own changes before the replicas catch up
+public final class ReadRouting {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    // Node-wide, unlike the pin: when this node last committed a write
+    private static volatile long lastWrite = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    private ReadRouting() {
+    }
+
+    public static void pinToPrimary() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PINNED.get() != null;
+    }
+
+    public static void clear() {
+        PINNED.remove();
+    }
+
+    public static void recordWrite() {
+        lastWrite = System.nanoTime();
+    }
+
+    // For cache refills: on a replica as a rule, but on the primary for replicaLag after a write on this node,
+    // since a replica that hasn't caught up would put the pre-write rows back for the whole TTL
+    public static <T> T refill(Duration replicaLag, Supplier<T> loader) {
+        if (isPinnedToPrimary() || System.nanoTime() - lastWrite >= replicaLag.toNanos()) {
+            return loader.get();
+        }
+        pinToPrimary();
+        try {
+            return loader.get();
+        } finally {
+            clear();
+        }
+    }
+}
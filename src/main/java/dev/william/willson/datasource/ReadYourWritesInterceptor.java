@@ -0,0 +1,83 @@
+package dev.william.willson.datasource;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.util.WebUtils;
+
+import java.time.Duration;
+
+// Read-your-writes: a write hands the client a token saying until when it should read from the primary,
+// both as a cookie and as the Posts-Primary-Until header for clients that echo headers instead of cookies.
+// Reads carrying a live token are pinned to the primary; tokens further out than the window are forged and ignored.
+class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    static final String HEADER = "Posts-Primary-Until";
+    static final String COOKIE = "posts-primary-until";
+
+    private final Duration window;
+
+    ReadYourWritesInterceptor(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long now = System.currentTimeMillis();
+        if (isWrite(request.getMethod())) {
+            String until = Long.toString(now + window.toMillis());
+            response.setHeader(HEADER, until);
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE, until)
+                    .path("/")
+                    .maxAge(window)
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .build()
+                    .toString());
+            ReadRouting.pinToPrimary();
+            return true;
+        }
+        long until = primaryUntil(request);
+        if (until > now && until <= now + window.toMillis()) {
+            ReadRouting.pinToPrimary();
+        }
+        return true;
+    }
+
+    // Streaming responses finish on another thread, so the pin is dropped here as well
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadRouting.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadRouting.clear();
+    }
+
+    private static boolean isWrite(String method) {
+        return switch (method) {
+            case "POST", "PUT", "PATCH", "DELETE" -> true;
+            default -> false;
+        };
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        String token = request.getHeader(HEADER);
+        if (token == null) {
+            Cookie cookie = WebUtils.getCookie(request, COOKIE);
+            token = cookie == null ? null : cookie.getValue();
+        }
+        if (token == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(token.strip());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package dev.william.willson.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+// Read replicas are switched on by listing them in posts.datasource.replica-urls; without it the
+// application talks to spring.datasource.url alone, exactly as before
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("posts.datasource.replica-urls")
+class ReplicaDataSourceConfiguration implements WebMvcConfigurer {
+
+    private final Duration readYourWritesWindow;
+
+    ReplicaDataSourceConfiguration(@Value("${posts.datasource.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    // Static: a BeanPostProcessor has to exist before the DataSource it wraps
+    @Bean
+    static ReplicaRoutingPostProcessor replicaRoutingPostProcessor(
+            @Value("${posts.datasource.replica-urls}") String[] replicaUrls,
+            @Value("${posts.datasource.replica-retry-after:10s}") Duration retryAfter,
+            @Value("${posts.datasource.replica-connection-timeout:1s}") Duration connectionTimeout) {
+        return new ReplicaRoutingPostProcessor(replicaUrls, retryAfter, connectionTimeout);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(readYourWritesWindow)).addPathPatterns("/api/**");
+    }
+}
@@ -0,0 +1,110 @@
+package dev.william.willson.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Read-only transactions take their connections from the replicas in turn, everything else from the primary.
+// A replica that fails to hand out a connection is skipped for retryAfter; with every replica down, or while
+// ReadRouting pins the thread, reads go to the primary. Wrap in a LazyConnectionDataSourceProxy so the choice
+// is made at the first statement, after the transaction has been marked read-only.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<? extends DataSource> replicas;
+    private final long retryAfterNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    // System.nanoTime() until which a replica is skipped, 0 while it is healthy
+    private final AtomicLongArray downUntil;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Duration retryAfter) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.retryAfterNanos = retryAfter.toNanos();
+        this.downUntil = new AtomicLongArray(replicas.size());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReadRouting.isPinnedToPrimary()) {
+            return primary.getConnection();
+        }
+        int count = replicas.size();
+        int start = next.getAndIncrement();
+        for (int i = 0; i < count; i++) {
+            int index = Math.floorMod(start + i, count);
+            long until = downUntil.get(index);
+            if (until != 0 && System.nanoTime() - until < 0) {
+                continue;
+            }
+            try {
+                Connection connection = replicas.get(index).getConnection();
+                if (until != 0 && downUntil.compareAndSet(index, until, 0)) {
+                    log.info("Replica {} is back, routing reads to it again", index);
+                }
+                return connection;
+            } catch (SQLException e) {
+                if (downUntil.getAndSet(index, System.nanoTime() + retryAfterNanos) == 0) {
+                    log.warn("Replica {} is unavailable, skipping it for {} ms: {}",
+                            index, retryAfterNanos / 1_000_000, e.getMessage());
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica routing uses the pools' own credentials");
+    }
+
+    // Lets Boot's pool metrics and health checks find the primary's Hikari pool through the proxy
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    public int healthyReplicas() {
+        int healthy = 0;
+        long now = System.nanoTime();
+        for (int i = 0; i < downUntil.length(); i++) {
+            long until = downUntil.get(i);
+            if (until == 0 || now - until >= 0) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    // Closes the primary as well: once wrapped, it is no longer the bean Spring would close
+    @Override
+    public void close() throws IOException {
+        if (primary instanceof Closeable closeable) {
+            closeable.close();
+        }
+        for (DataSource replica : replicas) {
+            if (replica instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dev.william.willson.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Puts the auto-configured Hikari pool behind a ReplicaRoutingDataSource. Each replica gets its own pool,
+// copied from the primary's settings but read-only, with a short connection timeout so a dead replica
+// costs one slow request rather than one per read, and allowed to start while the replica is still down.
+class ReplicaRoutingPostProcessor implements BeanPostProcessor, MeterBinder, DisposableBean {
+
+    private final String[] replicaUrls;
+    private final Duration retryAfter;
+    private final Duration connectionTimeout;
+
+    private volatile ReplicaRoutingDataSource routing;
+
+    ReplicaRoutingPostProcessor(String[] replicaUrls, Duration retryAfter, Duration connectionTimeout) {
+        this.replicaUrls = replicaUrls;
+        this.retryAfter = retryAfter;
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof HikariDataSource primary) || routing != null) {
+            return bean;
+        }
+        List<HikariDataSource> replicas = new ArrayList<>(replicaUrls.length);
+        for (int i = 0; i < replicaUrls.length; i++) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setJdbcUrl(replicaUrls[i].strip());
+            config.setPoolName("replica-" + i);
+            config.setReadOnly(true);
+            config.setConnectionTimeout(connectionTimeout.toMillis());
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new HikariDataSource(config));
+        }
+        routing = new ReplicaRoutingDataSource(primary, replicas, retryAfter);
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("posts.datasource.replicas.healthy", this, p -> p.routing == null ? 0 : p.routing.healthyReplicas())
+                .description("Read replicas currently taking reads")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (routing != null) {
+            routing.close();
+        }
+    }
+}
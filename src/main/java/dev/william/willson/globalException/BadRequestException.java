@@ -0,0 +1,7 @@
+package dev.william.willson.globalException;
+
+public class BadRequestException extends RuntimeException {
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
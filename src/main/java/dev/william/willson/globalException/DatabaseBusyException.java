@@ -0,0 +1,7 @@
+package dev.william.willson.globalException;
+
+public class DatabaseBusyException extends RuntimeException {
+    public DatabaseBusyException(String message) {
+        super(message);
+    }
+}
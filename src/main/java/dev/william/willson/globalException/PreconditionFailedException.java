@@ -0,0 +1,7 @@
+package dev.william.willson.globalException;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
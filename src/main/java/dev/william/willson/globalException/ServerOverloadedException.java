@@ -0,0 +1,7 @@
+package dev.william.willson.globalException;
+
+public class ServerOverloadedException extends RuntimeException {
+    public ServerOverloadedException(String message) {
+        super(message);
+    }
+}
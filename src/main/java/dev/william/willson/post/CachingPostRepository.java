@@ -0,0 +1,14 @@
+package dev.william.willson.post;
+
+import java.util.Optional;
+
+// Overrides the single-row CRUD methods of PostRepository so they go through PostCache.
+// Declared with the same type parameters as CrudRepository so the signatures don't clash.
+public interface CachingPostRepository<T, ID> {
+
+    Optional<T> findById(ID id);
+
+    <S extends T> S save(S entity);
+
+    void deleteById(ID id);
+}
@@ -0,0 +1,66 @@
+package dev.william.willson.post;
+
+import dev.william.willson.datasource.ReadRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jdbc.core.JdbcAggregateOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+class CachingPostRepositoryImpl implements CachingPostRepository<Post, Integer> {
+
+    private final JdbcAggregateOperations jdbcAggregateOperations;
+    private final PostCache postCache;
+    private final PostPageCache postPageCache;
+    private final PostHotStore postHotStore;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration replicaLag;
+
+    CachingPostRepositoryImpl(JdbcAggregateOperations jdbcAggregateOperations, PostCache postCache,
+                              PostPageCache postPageCache, PostHotStore postHotStore,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${posts.datasource.read-your-writes-window:5s}") Duration replicaLag) {
+        this.jdbcAggregateOperations = jdbcAggregateOperations;
+        this.postCache = postCache;
+        this.postPageCache = postPageCache;
+        this.postHotStore = postHotStore;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.replicaLag = replicaLag;
+    }
+
+    @Override
+    public Optional<Post> findById(Integer id) {
+        // A read-write transaction may see its own uncommitted rows, which must not leak into the cache
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Optional.ofNullable(jdbcAggregateOperations.findById(id, Post.class));
+        }
+        // Misses load read-only, so a replica serves them unless this node wrote recently
+        return postCache.get(id, key -> ReadRouting.refill(replicaLag, () -> readOnlyTransaction.execute(
+                status -> Optional.ofNullable(jdbcAggregateOperations.findById(key, Post.class)))));
+    }
+
+    @Override
+    @Transactional
+    public <S extends Post> S save(S entity) {
+        S saved = jdbcAggregateOperations.save(entity);
+        postCache.putAfterCommit(saved);
+        postPageCache.invalidateAfterCommit();
+        postHotStore.putAfterCommit(saved);
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public void deleteById(Integer id) {
+        jdbcAggregateOperations.deleteById(id, Post.class);
+        postCache.evictAfterCommit(id);
+        postPageCache.invalidateAfterCommit();
+        postHotStore.evictAfterCommit(id);
+    }
+}
@@ -0,0 +1,7 @@
+package dev.william.willson.post;
+
+import java.util.List;
+
+// Outcome of a batch lookup: posts in the order their ids were asked for, then the ids that matched no post
+public record PostBatch(List<Post> posts, List<Integer> missing) {
+}
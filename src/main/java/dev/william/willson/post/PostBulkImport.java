@@ -0,0 +1,109 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// One bulk request: validates rows as they are parsed and inserts them in batches of batchSize
+class PostBulkImport {
+
+    private final PostRepository postRepository;
+    private final Validator validator;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    private final List<Post> batch;
+    private final List<Long> batchIndexes;
+    private final List<PostBulkResult.RejectedPost> errors = new ArrayList<>();
+    private long accepted;
+    private long rejected;
+
+    PostBulkImport(PostRepository postRepository, Validator validator, int batchSize, int maxReportedErrors) {
+        this.postRepository = postRepository;
+        this.validator = validator;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.batch = new ArrayList<>(batchSize);
+        this.batchIndexes = new ArrayList<>(batchSize);
+    }
+
+    PostBulkResult run(PostJsonStream stream) throws IOException {
+        long index = 0;
+        try {
+            while (true) {
+                Post post;
+                try {
+                    post = stream.next();
+                } catch (JsonMappingException e) {
+                    reject(index++, null, List.of(e.getOriginalMessage()));
+                    continue;
+                }
+                if (post == null) {
+                    break;
+                }
+                add(index++, post);
+            }
+        } catch (JsonParseException e) {
+            // The rest of the body can't be read reliably; keep what was already accepted
+            reject(index, null, List.of("Malformed JSON: " + e.getOriginalMessage()));
+        }
+        flush();
+        return new PostBulkResult(accepted, rejected, List.copyOf(errors));
+    }
+
+    private void add(long index, Post post) {
+        List<String> violations = validate(post);
+        if (!violations.isEmpty()) {
+            reject(index, post.id(), violations);
+            return;
+        }
+        batch.add(post);
+        batchIndexes.add(index);
+        if (batch.size() == batchSize) {
+            flush();
+        }
+    }
+
+    private List<String> validate(Post post) {
+        List<String> violations = new ArrayList<>();
+        if (post.id() == null) {
+            violations.add("id: must not be null");
+        }
+        if (post.userId() == null) {
+            violations.add("userId: must not be null");
+        }
+        for (ConstraintViolation<Post> violation : validator.validate(post)) {
+            violations.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        violations.sort(null);
+        return violations;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] counts = postRepository.insertAll(batch);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                reject(batchIndexes.get(i), batch.get(i).id(), List.of("id: already exists"));
+            } else {
+                accepted++;
+            }
+        }
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    private void reject(long index, Integer id, List<String> messages) {
+        rejected++;
+        if (errors.size() < maxReportedErrors) {
+            errors.add(new PostBulkResult.RejectedPost(index, id, messages));
+        }
+    }
+}
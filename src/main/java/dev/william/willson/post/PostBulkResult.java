@@ -0,0 +1,11 @@
+package dev.william.willson.post;
+
+import java.util.List;
+
+// Outcome of POST /api/posts/bulk; errors is capped, the counts are always exact
+public record PostBulkResult(long accepted, long rejected, List<RejectedPost> errors) {
+
+    // index is the 0-based position of the row in the request body
+    public record RejectedPost(long index, Integer id, List<String> errors) {
+    }
+}
@@ -0,0 +1,119 @@
+package dev.william.willson.post;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// Bounded in-process cache of posts keyed by id (Caffeine, W-TinyLFU eviction).
+// Entries only move forward in version, so a slow reader can't put back a row a concurrent write replaced.
+@Component
+public class PostCache implements MeterBinder {
+
+    private final AsyncCache<Integer, Post> async;
+    private final Cache<Integer, Post> cache;
+
+    private volatile Counter coalescedCounter;
+
+    public PostCache(@Value("${posts.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${posts.cache.ttl:10m}") Duration ttl) {
+        // Async only so loads in flight are visible to other callers: a batch load of ids 1-100 and a single
+        // get(42) share one query. Loads still run on the caller's thread.
+        this.async = Caffeine.newBuilder()
+                .executor(Runnable::run)
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.cache = async.synchronous();
+    }
+
+    // Publishes cache.gets{result=hit|miss}, cache.evictions and cache.size for the "posts" cache, and
+    // posts.reads.coalesced{method=findById} for lookups that waited on another caller's load
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "posts");
+        coalescedCounter = PostRepositoryCoalescer.coalescedCounter(registry, "findById");
+    }
+
+    // Misses are loaded once per id even when many requests ask at the same time; absent rows are not cached
+    public Optional<Post> get(Integer id, Function<Integer, Optional<Post>> loader) {
+        Counter counter = coalescedCounter;
+        if (counter != null) {
+            // asMap() reads leave the hit/miss stats alone
+            CompletableFuture<Post> inFlight = async.asMap().get(id);
+            if (inFlight != null && !inFlight.isDone()) {
+                counter.increment();
+            }
+        }
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    // Hits come from the cache and the remaining ids are handed to loader in one call. Ids that another caller
+    // is loading right now are waited for instead of loaded again. Absent ids are left out of the result.
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Post> getAll(Collection<Integer> ids, Function<Set<Integer>, Map<Integer, Post>> loader) {
+        return cache.getAll(ids, keys -> loader.apply((Set<Integer>) keys));
+    }
+
+    public void put(Post post) {
+        cache.asMap().merge(post.id(), post, PostCache::newer);
+    }
+
+    public void evict(Integer id) {
+        cache.invalidate(id);
+    }
+
+    // For a change from the post_change feed, wherever it was made: drops the post unless the cache already holds
+    // the changed version or a later one. A delete always drops it.
+    public void evictStale(PostChange change) {
+        Integer version = change.type().equals("deleted") ? null : change.version();
+        cache.asMap().computeIfPresent(change.postId(),
+                (id, cached) -> version != null && versionOf(cached) >= version ? cached : null);
+    }
+
+    // Writers call these instead of put/evict: publishing before commit could expose a row that is later rolled back
+    void putAfterCommit(Post post) {
+        afterCommit(() -> put(post));
+    }
+
+    void evictAfterCommit(Integer id) {
+        afterCommit(() -> evict(id));
+    }
+
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static Post newer(Post cached, Post candidate) {
+        return versionOf(candidate) >= versionOf(cached) ? candidate : cached;
+    }
+
+    private static int versionOf(Post post) {
+        return post.version() == null ? -1 : post.version();
+    }
+}
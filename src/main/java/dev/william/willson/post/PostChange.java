@@ -0,0 +1,12 @@
+package dev.william.willson.post;
+
+// One row of the post_change outbox. The feed is ordered by (xid, seq); seq alone identifies the row and is the
+// Server-Sent Events id. type is created, updated or deleted, version the post's version after the change.
+public record PostChange(
+        long seq,
+        long xid,
+        int postId,
+        Integer version,
+        String type
+) {
+}
@@ -0,0 +1,28 @@
+package dev.william.willson.post;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/posts")
+public class PostChangeController {
+
+    private final PostChangeFeed postChangeFeed;
+
+    // Constructor injection
+    PostChangeController(PostChangeFeed postChangeFeed) {
+        this.postChangeFeed = postChangeFeed;
+    }
+
+    // One Server-Sent Event per created, updated or deleted post: the id is the feed position, the data the post's
+    // id and new version. Reconnecting clients resume with Last-Event-ID (EventSource sends it) or after.
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId,
+                                    @RequestParam(required = false) Long after) {
+        // No timeout of its own: spring.mvc.async.request-timeout ends the stream and the client reconnects
+        SseEmitter emitter = new SseEmitter();
+        postChangeFeed.subscribe(emitter, lastEventId != null ? lastEventId : after);
+        return emitter;
+    }
+}
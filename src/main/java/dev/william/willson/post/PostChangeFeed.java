@@ -0,0 +1,249 @@
+package dev.william.willson.post;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Fans the post_change outbox out to the Server-Sent Events subscribers of GET /api/posts/changes.
+// PostChangeListener calls poll() on every notification. poll() only drops changes into per-subscriber buffers,
+// each drained by its own virtual thread, so one slow client never holds up the rest. A client whose buffer fills
+// up is disconnected; it reconnects with Last-Event-ID and replays what it missed from the outbox.
+// The changes also keep PostCache, PostPageCache and PostHotStore fresh when other instances write.
+@Component
+public class PostChangeFeed implements MeterBinder {
+
+    // The data of a change event
+    public record Changed(int id, Integer version) {
+    }
+
+    // Position in the feed, which is ordered by (xid, seq)
+    private record Position(long xid, long seq) {
+
+        static final Position START = new Position(0, 0);
+
+        static Position of(PostChange change) {
+            return new Position(change.xid(), change.seq());
+        }
+
+        boolean isBefore(Position other) {
+            return xid < other.xid || xid == other.xid && seq < other.seq;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PostChangeFeed.class);
+    private static final int PAGE_SIZE = 500;
+
+    private final PostRepository postRepository;
+    private final PostCache postCache;
+    private final PostPageCache postPageCache;
+    private final PostHotStore postHotStore;
+    private final int bufferSize;
+    private final Duration heartbeat;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Last change handed to subscribers; read from the outbox on first use
+    private volatile Position position;
+
+    private volatile Counter publishedCounter;
+    private volatile Counter slowConsumerCounter;
+
+    public PostChangeFeed(PostRepository postRepository, PostCache postCache, PostPageCache postPageCache,
+                          PostHotStore postHotStore,
+                          @Value("${posts.changes.buffer-size:1000}") int bufferSize,
+                          @Value("${posts.changes.heartbeat:15s}") Duration heartbeat) {
+        this.postRepository = postRepository;
+        this.postCache = postCache;
+        this.postPageCache = postPageCache;
+        this.postHotStore = postHotStore;
+        this.bufferSize = bufferSize;
+        this.heartbeat = heartbeat;
+    }
+
+    // Streams changes to emitter: those after lastEventId first, when given (0 replays everything still retained),
+    // then new ones as they settle. An id that has been pruned from the outbox gets a reset event instead.
+    public void subscribe(SseEmitter emitter, Long lastEventId) {
+        Position from = null;
+        if (lastEventId != null) {
+            from = lastEventId == 0 ? Position.START : postRepository.findChange(lastEventId).map(Position::of).orElse(null);
+        }
+        boolean reset = lastEventId != null && from == null;
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+        // Read after registering: anything poll() hands out later reaches the buffer, anything earlier is replayed
+        Position head;
+        try {
+            head = head();
+        } catch (RuntimeException e) {
+            subscribers.remove(subscriber);
+            throw e;
+        }
+        Position cursor = from == null ? head : from;
+        subscriber.thread = Thread.ofVirtual().name("posts-changes-subscriber").unstarted(() -> subscriber.run(cursor, head, reset));
+        subscriber.thread.start();
+    }
+
+    // Hands every change settled since the last call to the subscribers
+    public void poll() {
+        Position from = head();
+        List<PostChange> changes;
+        do {
+            changes = postRepository.findSettledChanges(from.xid(), from.seq(), PAGE_SIZE);
+            if (changes.isEmpty()) {
+                return;
+            }
+            from = Position.of(changes.getLast());
+            // Moved before handing out, so a subscriber that joins meanwhile replays these rather than missing them
+            position = from;
+            // Before the subscribers, so a client that reloads a post on the event doesn't get the old copy.
+            // PostCache first: hot store misses load through it.
+            for (PostChange change : changes) {
+                postCache.evictStale(change);
+                postHotStore.evictStale(change);
+            }
+            postPageCache.invalidate();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(changes);
+            }
+            if (publishedCounter != null) {
+                publishedCounter.increment(changes.size());
+            }
+        } while (changes.size() == PAGE_SIZE);
+    }
+
+    // Ends every stream, e.g. on shutdown, so clients reconnect to another node
+    public void closeAll() {
+        subscribers.forEach(Subscriber::close);
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private Position head() {
+        Position head = position;
+        if (head == null) {
+            synchronized (this) {
+                head = position;
+                if (head == null) {
+                    head = postRepository.findLastSettledChange().map(Position::of).orElse(Position.START);
+                    position = head;
+                }
+            }
+        }
+        return head;
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<PostChange> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private volatile boolean closed;
+        private volatile Thread thread;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(List<PostChange> changes) {
+            for (PostChange change : changes) {
+                if (!buffer.offer(change)) {
+                    if (slowConsumerCounter != null) {
+                        slowConsumerCounter.increment();
+                    }
+                    log.info("Disconnecting a change feed subscriber that fell {} changes behind", bufferSize);
+                    close();
+                    return;
+                }
+            }
+        }
+
+        // Only flags and wakes the sending thread: the emitter may be blocked writing to this very client
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            Thread sender = thread;
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+
+        void run(Position cursor, Position until, boolean reset) {
+            try {
+                if (reset) {
+                    emitter.send(SseEmitter.event().id(Long.toString(until.seq())).name("reset")
+                            .data("Changes since Last-Event-ID are no longer retained, reload the posts"));
+                }
+                while (cursor.isBefore(until) && !closed) {
+                    List<PostChange> missed = postRepository.findChanges(cursor.xid(), cursor.seq(), until.xid(), until.seq(), PAGE_SIZE);
+                    if (missed.isEmpty()) {
+                        break;
+                    }
+                    for (PostChange change : missed) {
+                        send(change);
+                        cursor = Position.of(change);
+                    }
+                }
+                while (!closed) {
+                    PostChange change = buffer.poll(heartbeat.toNanos(), TimeUnit.NANOSECONDS);
+                    if (change == null) {
+                        // Keeps proxies from timing out an idle stream and finds clients that have gone away
+                        emitter.send(SseEmitter.event().comment(""));
+                    } else if (cursor.isBefore(Position.of(change))) {
+                        send(change);
+                        cursor = Position.of(change);
+                    }
+                }
+                emitter.complete();
+            } catch (InterruptedException e) {
+                emitter.complete();
+            } catch (IOException e) {
+                // The client has gone; the container completes the request
+                log.debug("Change feed subscriber disconnected", e);
+            } catch (RuntimeException e) {
+                log.warn("Change feed subscriber failed", e);
+                emitter.complete();
+            } finally {
+                close();
+            }
+        }
+
+        private void send(PostChange change) throws IOException {
+            emitter.send(SseEmitter.event().id(Long.toString(change.seq())).name(change.type())
+                    .data(new Changed(change.postId(), change.version()), MediaType.APPLICATION_JSON));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("posts.changes.subscribers", subscribers, Set::size)
+                .description("Open GET /api/posts/changes streams")
+                .register(registry);
+        publishedCounter = Counter.builder("posts.changes.published")
+                .description("Post changes handed to subscribers")
+                .register(registry);
+        slowConsumerCounter = Counter.builder("posts.changes.slow-consumers")
+                .description("Subscribers disconnected because their buffer was full")
+                .register(registry);
+    }
+}
@@ -0,0 +1,110 @@
+package dev.william.willson.post;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+
+// LISTENs for post_changes on a connection of its own, outside the pool, and runs PostChangeFeed.poll() on every
+// notification. It also polls every posts.changes.poll-interval, which covers notifications missed while
+// reconnecting and changes held back behind a transaction that was still running. It prunes the outbox past
+// posts.changes.retention as well.
+@Component
+public class PostChangeListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PostChangeListener.class);
+    private static final Duration PRUNE_INTERVAL = Duration.ofMinutes(1);
+
+    private final JdbcConnectionDetails connectionDetails;
+    private final PostChangeFeed postChangeFeed;
+    private final PostRepository postRepository;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private final Duration retention;
+
+    private volatile Thread listener;
+
+    public PostChangeListener(JdbcConnectionDetails connectionDetails, PostChangeFeed postChangeFeed, PostRepository postRepository,
+                              @Value("${posts.changes.enabled:true}") boolean enabled,
+                              @Value("${posts.changes.poll-interval:1s}") Duration pollInterval,
+                              @Value("${posts.changes.retention:1d}") Duration retention) {
+        this.connectionDetails = connectionDetails;
+        this.postChangeFeed = postChangeFeed;
+        this.postRepository = postRepository;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+    }
+
+    private void listen() {
+        Instant nextPrune = Instant.now();
+        while (listener != null) {
+            try (Connection connection = DriverManager.getConnection(connectionDetails.getJdbcUrl(),
+                    connectionDetails.getUsername(), connectionDetails.getPassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN post_changes");
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (listener != null) {
+                    // Straight after (re)connecting too, to pick up whatever committed while nobody was listening
+                    postChangeFeed.poll();
+                    if (Instant.now().isAfter(nextPrune)) {
+                        int pruned = postRepository.deleteChangesBefore(Instant.now().minus(retention));
+                        log.debug("Pruned {} post changes older than {}", pruned, retention);
+                        nextPrune = Instant.now().plus(PRUNE_INTERVAL);
+                    }
+                    pgConnection.getNotifications((int) pollInterval.toMillis());
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (listener == null) {
+                    return;
+                }
+                log.warn("Change feed listener failed, reconnecting in {}", pollInterval, e);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listener = Thread.ofPlatform().name("posts-changes-listener").daemon().start(this::listen);
+    }
+
+    // Also ends the open streams, before the web server waits for requests to finish
+    @Override
+    public void stop() {
+        Thread running = listener;
+        if (running == null) {
+            return;
+        }
+        listener = null;
+        try {
+            running.join(pollInterval.multipliedBy(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        postChangeFeed.closeAll();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return listener != null;
+    }
+}
@@ -1,33 +1,257 @@
 package dev.william.willson.post;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.william.willson.globalException.BadRequestException;
+import dev.william.willson.globalException.PreconditionFailedException;
 import dev.william.willson.globalException.ResourceNotFoundException;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/posts")
 public class PostController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
     private final PostRepository postRepository;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PostPageCache postPageCache;
+    private final PostWriteBehind postWriteBehind;
+    private final PostHotStore postHotStore;
+    private final int maxPageSize;
+    private final int bulkBatchSize;
+    private final int bulkMaxReportedErrors;
+    private final int batchMaxIds;
 
     // Constructor injection
-    PostController(PostRepository postRepository) {
+    PostController(PostRepository postRepository, ObjectMapper objectMapper, Validator validator,
+                   PostPageCache postPageCache, PostWriteBehind postWriteBehind, PostHotStore postHotStore,
+                   @Value("${posts.page.max-limit:1000}") int maxPageSize,
+                   @Value("${posts.bulk.batch-size:1000}") int bulkBatchSize,
+                   @Value("${posts.bulk.max-reported-errors:1000}") int bulkMaxReportedErrors,
+                   @Value("${posts.batch.max-ids:1000}") int batchMaxIds) {
         this.postRepository = postRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.postPageCache = postPageCache;
+        this.postWriteBehind = postWriteBehind;
+        this.postHotStore = postHotStore;
+        this.maxPageSize = maxPageSize;
+        this.bulkBatchSize = bulkBatchSize;
+        this.bulkMaxReportedErrors = bulkMaxReportedErrors;
+        this.batchMaxIds = batchMaxIds;
     }
 
+    // Pages come from PostPageCache as ready-made JSON, gzipped when the client accepts it
     @GetMapping("")
-    public List<Post> findAll() {
-        return postRepository.findAll();
+    public ResponseEntity<byte[]> findAll(@RequestParam(required = false) Integer after,
+                                          @RequestParam(required = false) Integer limit,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean whole = after == null && limit == null;
+        Integer from = whole ? null : Integer.valueOf(after == null ? 0 : after);
+        Integer pageSize = whole ? null : Integer.valueOf(Math.clamp(limit == null ? maxPageSize : limit, 1, maxPageSize));
+        PostPageCache.Page page = postPageCache.get(from, pageSize, () -> renderPage(from, pageSize));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(page.eTag())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (page.link() != null) {
+            response.header(HttpHeaders.LINK, page.link());
+        }
+        if (page.gzip() != null && acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(page.gzip());
+        }
+        return response.body(page.json());
+    }
+
+    // Without after/limit the whole table is returned, as before; clients should page with ?after=&limit=
+    private PostPageCache.Page renderPage(Integer after, Integer pageSize) {
+        List<Post> posts;
+        String next = null;
+        if (pageSize == null) {
+            posts = postRepository.findAll();
+        } else {
+            posts = postRepository.findByIdGreaterThanOrderById(after, Limit.of(pageSize));
+            if (posts.size() == pageSize) {
+                next = "</api/posts?after=" + posts.getLast().id() + "&limit=" + pageSize + ">; rel=\"next\"";
+            }
+        }
+        try {
+            return new PostPageCache.Page(objectMapper.writeValueAsBytes(posts), null, listETag(posts), next);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // One JSON document per line, written while rows are still being read from the cursor
+    @GetMapping(value = "", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(defaultValue = "0") int after) {
+        StreamingResponseBody body = outputStream -> writeNdjson(after, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
+    // Whole-table export for analytics jobs, streamed so memory stays flat however many rows there are.
+    // Rows come in id order; an interrupted export resumes with after=<last id received>.
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(defaultValue = "0") int after,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        PostExportFormat exportFormat = PostExportFormat.of(format);
+        if (exportFormat == null) {
+            throw new BadRequestException("Unknown export format: " + format + " (expected csv, ndjson or binary)");
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream;
+            if (exportFormat == PostExportFormat.NDJSON) {
+                writeNdjson(after, out);
+            } else {
+                postRepository.copyOut(after, exportFormat, out);
+            }
+            if (out instanceof GZIPOutputStream gzipOut) {
+                gzipOut.finish();
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.mediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"posts." + exportFormat.extension() + "\"")
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
+    // Shared by streamAll and the ndjson export
+    private void writeNdjson(int after, OutputStream outputStream) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Post.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.createGenerator(outputStream);
+        generator.setRootValueSeparator(null);
+        postRepository.streamAll(after, post -> {
+            try {
+                writer.writeValue(generator, post);
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.flush();
+    }
+
+    // Ranked keyword search over title and body; the next page is requested with the cursor from the Link header
+    @GetMapping("/search")
+    public ResponseEntity<List<PostSearchHit>> search(@RequestParam String q,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestParam(defaultValue = "false") boolean highlight) {
+        if (q.isBlank()) {
+            throw new BadRequestException("Search query must not be empty");
+        }
+        float afterRank = Float.POSITIVE_INFINITY;
+        int afterId = 0;
+        if (cursor != null) {
+            // cursor is "<rank>:<id>" of the last hit on the previous page
+            String[] parts = cursor.split(":", 2);
+            try {
+                afterRank = Float.parseFloat(parts[0]);
+                afterId = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new BadRequestException("Invalid search cursor: " + cursor);
+            }
+        }
+        int pageSize = Math.clamp(limit == null ? 20 : limit, 1, maxPageSize);
+        List<PostSearchHit> hits = postRepository.search(q, afterRank, afterId, pageSize, highlight);
+        if (hits.size() < pageSize) {
+            return ResponseEntity.ok(hits);
+        }
+        PostSearchHit last = hits.getLast();
+        String next = UriComponentsBuilder.fromPath("/api/posts/search")
+                .queryParam("q", q)
+                .queryParam("cursor", last.rank() + ":" + last.post().id())
+                .queryParam("limit", pageSize)
+                .queryParam("highlight", highlight)
+                .encode()
+                .toUriString();
+        return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(hits);
+    }
+
+    // Spring answers 304 by itself when If-None-Match matches the ETag of a 200 response
     @GetMapping("/{id}")
-    public Optional<Post> findPostById(@PathVariable Integer id) {
-        return  Optional.ofNullable(postRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Post not found with id: " + id)));
+    public ResponseEntity<?> findPostById(@PathVariable Integer id) {
+        // With the hot store on, the stored JSON is written out as is
+        if (postHotStore.isEnabled()) {
+            PostHotStore.Hit hit = postHotStore.get(id, postRepository::findById)
+                    .orElseThrow(() -> new ResourceNotFoundException("Post not found with id: " + id));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+            if (hit.version() != null) {
+                response.eTag(Integer.toString(hit.version()));
+            }
+            return response.body(hit.json());
+        }
+        Post post = postRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Post not found with id: " + id));
+        return withETag(ResponseEntity.ok(), post).body(post);
+    }
+
+    // Many posts in one round trip: GET /api/posts?ids=3,1,2, or POST /api/posts/batch-get with a JSON array of ids
+    // when the list is too long for a URL. Cached posts are served from PostCache, the rest come from one query.
+    @GetMapping(value = "", params = "ids")
+    public PostBatch findPostsByIds(@RequestParam List<Integer> ids) {
+        return findBatch(ids);
+    }
+
+    @PostMapping("/batch-get")
+    public PostBatch batchGet(@RequestBody List<Integer> ids) {
+        return findBatch(ids);
+    }
+
+    private PostBatch findBatch(List<Integer> ids) {
+        if (ids.contains(null)) {
+            throw new BadRequestException("Post ids must not be null");
+        }
+        // Repeated ids are looked up, and returned, once
+        List<Integer> distinct = ids.stream().distinct().toList();
+        if (distinct.size() > batchMaxIds) {
+            throw new BadRequestException("At most " + batchMaxIds + " post ids can be fetched at once, got " + distinct.size());
+        }
+        Map<Integer, Post> found = postRepository.findAllByIds(distinct);
+        List<Post> posts = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : distinct) {
+            Post post = found.get(id);
+            if (post != null) {
+                posts.add(post);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new PostBatch(posts, missing);
     }
 
     @ResponseStatus(HttpStatus.CREATED)
@@ -36,26 +260,156 @@ public class PostController {
         return postRepository.save(post);
     }
 
+    // Accepts a JSON array or NDJSON; rows are parsed, validated and inserted batch by batch
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public PostBulkResult createPosts(InputStream body) throws IOException {
+        PostJsonStream stream;
+        try {
+            stream = PostJsonStream.of(objectMapper, body);
+        } catch (JsonProcessingException e) {
+            // Broken before the first row, so there is nothing to accept or report per row
+            throw new BadRequestException("Malformed JSON: " + e.getOriginalMessage());
+        }
+        try (stream) {
+            return new PostBulkImport(postRepository, validator, bulkBatchSize, bulkMaxReportedErrors).run(stream);
+        }
+    }
+
+    // One UPDATE that checks the version from If-Match, or else from the body; without either the last write wins.
+    // With Prefer: respond-async and posts.write-behind.enabled the update is queued and answered with 202.
     @PutMapping("/{id}")
-    public Post updatePost(@PathVariable Integer id, @RequestBody @Valid Post post) {
-        Optional<Post> existingPost = postRepository.findById(id);
-        if (existingPost.isPresent()) {
-            Post updatedPost = new Post(
-                    existingPost.get().id(),
-                    existingPost.get().userId(),
-                    post.title(),
-                    post.body(),
-                    existingPost.get().version()
-            );
-            return postRepository.save(updatedPost);
-        } else {
-            throw new ResourceNotFoundException("Post not found with id: " + id);
+    public ResponseEntity<Post> updatePost(@PathVariable Integer id, @RequestBody @Valid Post post,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @RequestHeader(value = "Prefer", required = false) String prefer) {
+        if (prefer != null && prefer.contains("respond-async") && postWriteBehind.isEnabled()) {
+            ResponseEntity<Post> accepted = updateLater(id, ifMatch, post);
+            if (accepted != null) {
+                return accepted;
+            }
+        }
+        return update(id, ifMatch, post.version(), post.title(), post.body());
+    }
+
+    // The 202 carries the post as it will read after the flush, its pending version as the ETag
+    private ResponseEntity<Post> updateLater(Integer id, String ifMatch, Post post) {
+        boolean precondition = ifMatch != null;
+        Integer expectedVersion = expectedVersion(ifMatch, post.version());
+        Post current = postRepository.findById(id)
+                .orElseThrow(() -> precondition ? noCurrentPost(id, ifMatch) : new ResourceNotFoundException("Post not found with id: " + id));
+        Post queued;
+        try {
+            queued = postWriteBehind.enqueue(current, expectedVersion, post.title(), post.body());
+        } catch (OptimisticLockingFailureException e) {
+            throw precondition ? new PreconditionFailedException("Post " + id + " does not match " + ifMatch) : e;
+        }
+        if (queued == null) {
+            return null;
         }
+        return withETag(ResponseEntity.accepted(), queued).header("Preference-Applied", "respond-async").body(queued);
+    }
+
+    // JSON Merge Patch: only the fields in the document are written
+    @PatchMapping(value = "/{id}", consumes = {APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Post> patchPost(@PathVariable Integer id, @RequestBody JsonNode patch,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        PostMergePatch mergePatch = PostMergePatch.parse(patch, id, validator, () -> postRepository.findById(id));
+        return update(id, ifMatch, mergePatch.version(), mergePatch.title(), mergePatch.body());
+    }
+
+    private ResponseEntity<Post> update(Integer id, String ifMatch, Integer bodyVersion, String title, String body) {
+        boolean precondition = ifMatch != null;
+        Integer expectedVersion = expectedVersion(ifMatch, bodyVersion);
+        if (isAnyVersion(ifMatch) && !postRepository.existsById(id)) {
+            throw noCurrentPost(id, ifMatch);
+        }
+        Post updatedPost = postRepository.update(id, expectedVersion, title, body)
+                .orElseThrow(() -> updateFailed(id, ifMatch, precondition, expectedVersion));
+        return withETag(ResponseEntity.ok(), updatedPost).body(updatedPost);
+    }
+
+    // Only a write that matched nothing pays for the lookup telling a missing post from a concurrent update
+    private RuntimeException updateFailed(Integer id, String ifMatch, boolean precondition, Integer expectedVersion) {
+        if (precondition) {
+            return new PreconditionFailedException("Post " + id + " does not match " + ifMatch);
+        }
+        if (expectedVersion != null && postRepository.existsById(id)) {
+            return new OptimisticLockingFailureException("Post " + id + " is no longer at version " + expectedVersion);
+        }
+        return new ResourceNotFoundException("Post not found with id: " + id);
     }
 
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @DeleteMapping("/{id}")
-    public void deletePost(@PathVariable Integer id) {
-        postRepository.deleteById(id);
+    public void deletePost(@PathVariable Integer id,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (ifMatch == null) {
+            postRepository.deleteById(id);
+        } else if (isAnyVersion(ifMatch)) {
+            if (!postRepository.existsById(id)) {
+                throw noCurrentPost(id, ifMatch);
+            }
+            postRepository.deleteById(id);
+        } else if (!postRepository.deleteIfVersion(id, matchedVersion(ifMatch))) {
+            throw new PreconditionFailedException("Post " + id + " does not match " + ifMatch);
+        }
+    }
+
+    // A post's ETag is its version, which changes on every write; new posts without a version get none
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder builder, Post post) {
+        return post.version() == null ? builder : builder.eTag(Integer.toString(post.version()));
+    }
+
+    // A list changes when any post in it is added, removed or rewritten, so hash every (id, version) pair (FNV-1a)
+    private static String listETag(List<Post> posts) {
+        long hash = 0xcbf29ce484222325L;
+        for (Post post : posts) {
+            hash = (hash ^ post.id()) * 0x100000001b3L;
+            hash = (hash ^ (post.version() == null ? -1 : post.version())) * 0x100000001b3L;
+        }
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+
+    // gzip unless it is missing from Accept-Encoding or listed with q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // If-Match: * matches any current version, and only fails when there is no post (RFC 9110 13.1.1).
+    // Once the post is known to exist the write is unconditional: the body's version doesn't apply either.
+    private static boolean isAnyVersion(String ifMatch) {
+        return ifMatch != null && ifMatch.trim().equals("*");
+    }
+
+    private static Integer expectedVersion(String ifMatch, Integer bodyVersion) {
+        if (ifMatch == null) {
+            return bodyVersion;
+        }
+        return isAnyVersion(ifMatch) ? null : Integer.valueOf(matchedVersion(ifMatch));
+    }
+
+    private static PreconditionFailedException noCurrentPost(Integer id, String ifMatch) {
+        return new PreconditionFailedException("Post " + id + " does not exist, so If-Match " + ifMatch + " fails");
+    }
+
+    // If-Match needs a strong comparison, so weak or malformed tags never match
+    private static int matchedVersion(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Integer.parseInt(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new PreconditionFailedException("If-Match " + ifMatch + " does not match any post version");
     }
 }
@@ -0,0 +1,103 @@
+package dev.william.willson.post;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Synthetic posts for load tests, the same ones for the same seed and count. Ids run from 1 up.
+// Sizes follow what user-written text tends to look like, a log-normal with a long tail: titles are a median of
+// 7 words (1 to 30, cut to 255 characters), bodies a median of about 600 characters (40 to 20000) in lines of
+// 8 to 16 words. Words are drawn Zipf-weighted from a small English vocabulary, so full-text search has common
+// and rare terms to find. Authors are Zipf-weighted as well: a few users write many posts, most write a handful.
+public class PostDataGenerator {
+
+    public static final List<String> WORDS = List.of(
+            "the", "post", "new", "how", "data", "team", "code", "release", "update", "guide", "java", "spring",
+            "database", "performance", "service", "user", "feature", "design", "cache", "query", "test", "build",
+            "deploy", "review", "search", "latency", "memory", "thread", "index", "schema", "cloud", "api", "client",
+            "server", "request", "response", "error", "fix", "improve", "simple", "fast", "slow", "scale", "load",
+            "traffic", "monitor", "metric", "alert", "incident", "report", "plan", "week", "today", "project", "idea",
+            "question", "answer", "problem", "solution", "example", "pattern", "practice", "lesson", "story", "note",
+            "event", "stream", "batch", "queue", "message", "storage", "network", "security", "token", "session",
+            "config", "profile", "startup", "container", "cluster", "replica", "partition", "backup", "restore",
+            "migration", "version", "history", "change", "feed", "export", "import", "format", "json", "table",
+            "row", "column", "page", "limit", "offset", "cursor", "transaction", "lock", "commit", "rollback",
+            "benchmark", "profiling", "garbage", "collector", "heap", "pause", "virtual", "platform", "tuning",
+            "kernel", "disk", "socket", "timeout", "retry", "backoff", "budget", "capacity", "forecast", "growth",
+            "customer", "product", "launch", "roadmap", "meeting", "notes", "draft", "final", "weekly", "summary",
+            "tips", "tricks", "mistakes", "myths", "deep", "dive", "first", "look", "ideas", "from", "field");
+
+    private static final double[] CUMULATIVE_WORD_WEIGHTS = zipf(WORDS.size());
+
+    private final SplittableRandom random;
+    private final double[] cumulativeUserWeights;
+    private int nextId = 1;
+
+    public PostDataGenerator(long seed, long count) {
+        this.random = new SplittableRandom(seed);
+        this.cumulativeUserWeights = zipf(usersFor(count));
+    }
+
+    // One author per 20 posts on average, at least one
+    public static int usersFor(long count) {
+        return (int) Math.clamp(count / 20, 1, Integer.MAX_VALUE);
+    }
+
+    public Post next() {
+        int titleWords = (int) Math.clamp(Math.round(logNormal(7, 0.5)), 1, 30);
+        StringBuilder title = new StringBuilder();
+        appendWords(title, titleWords);
+        title.setCharAt(0, Character.toUpperCase(title.charAt(0)));
+        if (title.length() > 255) {
+            title.setLength(255);
+        }
+
+        int bodyLength = (int) Math.clamp(Math.round(logNormal(600, 0.8)), 40, 20_000);
+        StringBuilder body = new StringBuilder(bodyLength + 100);
+        while (body.length() < bodyLength) {
+            if (!body.isEmpty()) {
+                body.append('\n');
+            }
+            appendWords(body, 8 + random.nextInt(9));
+        }
+        return new Post(nextId++, 1 + pick(cumulativeUserWeights), title.toString(), body.toString(), null);
+    }
+
+    private void appendWords(StringBuilder text, int words) {
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS.get(pick(CUMULATIVE_WORD_WEIGHTS)));
+        }
+    }
+
+    private double logNormal(double median, double sigma) {
+        return median * Math.exp(sigma * random.nextGaussian());
+    }
+
+    private int pick(double[] cumulativeWeights) {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Weight 1/rank, summed
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+}
@@ -1,38 +1,193 @@
 package dev.william.willson.post;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.datasource.ReadRouting;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.asm.TypeReference;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+// Seeds an empty Post table from a {"posts": [...]} file, streaming it in fixed-size batches, or with
+// posts.loader.synthetic-posts generated ones (PostDataGenerator) for load tests.
+// Each batch commits on its own, so memory and transaction size stay bounded however large the file is.
 @Component
-public class PostDataLoader implements CommandLineRunner {
+public class PostDataLoader implements CommandLineRunner, HealthIndicator, MeterBinder {
+
+    enum State { PENDING, LOADING, COMPLETED, SKIPPED, FAILED }
 
     private static final Logger log = LoggerFactory.getLogger(PostDataLoader.class);
     private final ObjectMapper objectMapper;
     private final PostRepository postRepository;
+    private final PostHotStore postHotStore;
+    private final TaskExecutor taskExecutor;
+    private final Resource postsJson;
+    private final int batchSize;
+    private final boolean async;
+    private final boolean enabled;
+    private final long syntheticPosts;
+    private final long syntheticSeed;
+
+    private volatile State state = State.PENDING;
+    private volatile long loaded;
 
-    public PostDataLoader(ObjectMapper objectMapper, PostRepository postRepository){
+    public PostDataLoader(ObjectMapper objectMapper, PostRepository postRepository, PostHotStore postHotStore,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+                          @Value("${posts.loader.location:classpath:/data/posts.json}") Resource postsJson,
+                          @Value("${posts.loader.batch-size:1000}") int batchSize,
+                          @Value("${posts.loader.async:false}") boolean async,
+                          @Value("${posts.loader.enabled:true}") boolean enabled,
+                          @Value("${posts.loader.synthetic-posts:0}") long syntheticPosts,
+                          @Value("${posts.loader.synthetic-seed:42}") long syntheticSeed){
         this.objectMapper = objectMapper;
         this.postRepository = postRepository;
+        this.postHotStore = postHotStore;
+        this.taskExecutor = taskExecutor;
+        this.postsJson = postsJson;
+        this.batchSize = batchSize;
+        this.async = async;
+        this.enabled = enabled;
+        this.syntheticPosts = syntheticPosts;
+        this.syntheticSeed = syntheticSeed;
     }
 
     @Override
     public void run(String... args) throws Exception {
-        if(postRepository.count() == 0){
-            String POSTS_JSON = "/data/posts.json";
-            log.info("Loading post into database from JSON: {}", POSTS_JSON);
-            try (InputStream inputStream = TypeReference.class.getResourceAsStream(POSTS_JSON)) {
-                Posts response = objectMapper.readValue(inputStream, Posts.class);
-                postRepository.saveAll(response.posts());
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to load JSON data", e);
+        // Disabled, not even the count runs, so startup needs no database round trip
+        if(!enabled || postRepository.count() != 0){
+            state = State.SKIPPED;
+            warmHotStore();
+            return;
+        }
+        if (!async) {
+            load();
+            warmHotStore();
+            return;
+        }
+        // Runners finish before the app reports readiness, so loading in the background lets traffic in sooner
+        taskExecutor.execute(() -> {
+            try {
+                load();
+            } catch (RuntimeException e) {
+                log.error("Failed to load posts from {}", postsJson, e);
             }
+            warmHotStore();
+        });
+    }
+
+    // Fills PostHotStore with the whole table in the background; until then reads fill it one miss at a time
+    private void warmHotStore() {
+        if (!postHotStore.isEnabled()) {
+            return;
         }
+        taskExecutor.execute(() -> {
+            long start = System.nanoTime();
+            postHotStore.beginLoad();
+            // From the primary, so a lagging replica can't put back a post that was just changed
+            ReadRouting.pinToPrimary();
+            try {
+                postRepository.streamAll(0, postHotStore::load);
+                log.info("Loaded {} posts into the hot store in {} ms", postHotStore.size(), elapsedMillis(start));
+            } catch (RuntimeException e) {
+                log.error("Failed to load posts into the hot store", e);
+            } finally {
+                ReadRouting.clear();
+                postHotStore.endLoad();
+            }
+        });
+    }
+
+    private void load() {
+        state = State.LOADING;
+        long start = System.nanoTime();
+        List<Post> batch = new ArrayList<>(batchSize);
+        try {
+            if (syntheticPosts > 0) {
+                log.info("Loading {} synthetic posts into database (seed {})", syntheticPosts, syntheticSeed);
+                PostDataGenerator generator = new PostDataGenerator(syntheticSeed, syntheticPosts);
+                for (long i = 0; i < syntheticPosts; i++) {
+                    batch.add(generator.next());
+                    if (batch.size() == batchSize) {
+                        insert(batch, start);
+                    }
+                }
+            } else {
+                log.info("Loading post into database from JSON: {}", postsJson);
+                try (InputStream inputStream = postsJson.getInputStream();
+                     PostJsonStream stream = PostJsonStream.ofField(objectMapper, inputStream, "posts")) {
+                    for (Post post = stream.next(); post != null; post = stream.next()) {
+                        batch.add(post);
+                        if (batch.size() == batchSize) {
+                            insert(batch, start);
+                        }
+                    }
+                }
+            }
+            insert(batch, start);
+        } catch (IOException e) {
+            state = State.FAILED;
+            throw new RuntimeException("Failed to load JSON data", e);
+        } catch (RuntimeException e) {
+            state = State.FAILED;
+            throw e;
+        }
+        state = State.COMPLETED;
+        log.info("Loaded {} posts in {} ms ({} posts/s)", loaded, elapsedMillis(start), rate(start));
+    }
+
+    private void insert(List<Post> batch, long start) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Rows already in the table are skipped by ON CONFLICT and count 0, so they don't inflate the total
+        int[] counts = postRepository.insertAll(batch);
+        long before = loaded;
+        loaded += Arrays.stream(counts).sum();
+        batch.clear();
+        // Roughly one progress line per 100 batches
+        if (loaded / (batchSize * 100L) != before / (batchSize * 100L)) {
+            log.info("Loaded {} posts so far ({} posts/s)", loaded, rate(start));
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private long rate(long start) {
+        return loaded * 1000 / Math.max(1, elapsedMillis(start));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("posts.loader.loaded", this, loader -> loader.loaded)
+                .description("Posts inserted by the seed loader so far")
+                .register(registry);
+    }
+
+    // Reported on its own health group so readiness doesn't wait for seeding
+    @Override
+    public Health health() {
+        Health.Builder builder = switch (state) {
+            case COMPLETED, SKIPPED -> Health.up();
+            case FAILED -> Health.down();
+            case PENDING, LOADING -> Health.outOfService();
+        };
+        return builder.withDetail("state", state).withDetail("loaded", loaded).build();
     }
 }
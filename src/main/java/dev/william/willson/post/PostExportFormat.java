@@ -0,0 +1,44 @@
+package dev.william.willson.post;
+
+import java.util.Locale;
+
+// Formats of GET /api/posts/export. CSV and BINARY (PostgreSQL's COPY binary format, for loading into another
+// database with COPY FROM) come straight out of COPY ... TO STDOUT; NDJSON is written from a server-side cursor.
+public enum PostExportFormat {
+
+    CSV("text/csv", "csv", "FORMAT csv"),
+    NDJSON(PostController.APPLICATION_NDJSON_VALUE, "ndjson", null),
+    BINARY("application/octet-stream", "pgcopy", "FORMAT binary");
+
+    private final String mediaType;
+    private final String extension;
+    private final String copyOptions;
+
+    PostExportFormat(String mediaType, String extension, String copyOptions) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+        this.copyOptions = copyOptions;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    // WITH (...) options of the COPY statement, null for formats COPY doesn't write
+    public String copyOptions() {
+        return copyOptions;
+    }
+
+    // Null for an unknown name
+    public static PostExportFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
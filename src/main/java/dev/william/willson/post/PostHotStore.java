@@ -0,0 +1,527 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Optional hot tier for GET /api/posts/{id} that keeps millions of posts without millions of heap objects.
+// Each post is stored as the JSON the endpoint answers with, in 64MB direct (off-heap) slabs, and indexed by its int
+// id in an open-addressing table of two primitive arrays. The GC sees a few arrays and slab handles, whatever the count.
+// A hit copies the JSON straight into the response; no Post is built and Jackson doesn't run.
+// Freshness: writers put or remove posts after commit. Entries only move forward in version, as in PostCache, and a
+// miss loaded while a write committed is not stored. Writes made elsewhere (other instances, SQL) arrive through the
+// post_change feed, which drops the posts they made stale; with posts.changes.enabled=false nothing does, and the
+// store is only safe on a single instance.
+// Readers don't lock: they read optimistically and retry under the read lock if a writer got in between.
+@Component
+public class PostHotStore implements MeterBinder {
+
+    // What a hit hands back: the response body and the version for its ETag (null when the post has none)
+    public record Hit(byte[] json, Integer version) {
+    }
+
+    static final int SLAB_SIZE = 64 << 20;
+    // Larger posts are left to the repository rather than let one of them pin a slab
+    private static final int MAX_RECORD_SIZE = SLAB_SIZE / 16;
+    private static final int HEADER_SIZE = 8;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    private static final int NO_VERSION = Integer.MIN_VALUE;
+
+    private final boolean enabled;
+    private final ObjectMapper objectMapper;
+    private final int maxSlabs;
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong generation = new AtomicLong();
+
+    // Guarded by lock. refs[i] is (slab << 32 | offset) of the record for keys[i], EMPTY or REMOVED; slab 0 starts
+    // with a header-sized gap so no record has ref 0.
+    private int[] keys;
+    private long[] refs;
+    private int size;
+    private int used;
+    private ByteBuffer[] slabs;
+    private int[] slabLiveBytes;
+    private int tail;
+    private int tailPosition;
+    private Set<Integer> removedWhileLoading;
+
+    private volatile Counter hitCounter;
+    private volatile Counter missCounter;
+    private volatile Counter rejectedCounter;
+
+    public PostHotStore(ObjectProvider<ObjectMapper> objectMapper,
+                        @Value("${posts.hot-store.enabled:false}") boolean enabled,
+                        @Value("${posts.hot-store.maximum-size:1GB}") DataSize maximumSize) {
+        this.enabled = enabled;
+        // The application's mapper, so stored JSON matches what Jackson writes for the other endpoints
+        this.objectMapper = objectMapper.getIfAvailable(ObjectMapper::new);
+        this.maxSlabs = (int) Math.max(2, maximumSize.toBytes() / SLAB_SIZE);
+        this.keys = new int[1 << 16];
+        this.refs = new long[1 << 16];
+        this.slabs = new ByteBuffer[maxSlabs + 1];
+        this.slabLiveBytes = new int[maxSlabs + 1];
+        if (enabled) {
+            slabs[0] = ByteBuffer.allocateDirect(SLAB_SIZE);
+            tailPosition = HEADER_SIZE;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Serves the post from the store, or loads it with loader and stores it. Empty when the post doesn't exist.
+    public Optional<Hit> get(int id, Function<Integer, Optional<Post>> loader) {
+        if (!enabled) {
+            return loader.apply(id).map(post -> new Hit(encode(post), post.version()));
+        }
+        Hit hit = find(id);
+        if (hit != null) {
+            increment(hitCounter);
+            return Optional.of(hit);
+        }
+        increment(missCounter);
+        long before = generation.get();
+        Optional<Post> post = loader.apply(id);
+        if (post.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] json = encode(post.get());
+        // A write that committed while this was loading may have replaced or removed the row just read
+        if (generation.get() == before) {
+            long stamp = lock.writeLock();
+            try {
+                if (generation.get() == before) {
+                    store(id, json, versionOf(post.get()));
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        return Optional.of(new Hit(json, post.get().version()));
+    }
+
+    Hit find(int id) {
+        if (!enabled) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Hit hit = read(id);
+                if (lock.validate(stamp)) {
+                    return hit;
+                }
+            } catch (RuntimeException e) {
+                // A writer moved things under the read; the locked read below sees a consistent store
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Called by the repository write paths, like PostCache.putAfterCommit/evictAfterCommit
+    void putAfterCommit(Post post) {
+        if (enabled) {
+            PostCache.afterCommit(() -> put(post));
+        }
+    }
+
+    void evictAfterCommit(Integer id) {
+        if (enabled) {
+            PostCache.afterCommit(() -> evict(id));
+        }
+    }
+
+    public void put(Post post) {
+        if (!enabled) {
+            return;
+        }
+        generation.incrementAndGet();
+        byte[] json = encode(post);
+        long stamp = lock.writeLock();
+        try {
+            store(post.id(), json, versionOf(post));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void evict(Integer id) {
+        if (!enabled) {
+            return;
+        }
+        generation.incrementAndGet();
+        long stamp = lock.writeLock();
+        try {
+            remove(id);
+            if (removedWhileLoading != null) {
+                removedWhileLoading.add(id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // For a change from the post_change feed, wherever it was made: drops the post unless the store already holds
+    // the changed version or a later one, as it does after this instance's own writes. A delete always drops it.
+    public void evictStale(PostChange change) {
+        if (!enabled) {
+            return;
+        }
+        Integer version = change.type().equals("deleted") ? null : change.version();
+        generation.incrementAndGet();
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(change.postId());
+            if (slot >= 0 && version != null && compareVersions(versionAt(slot), version) >= 0) {
+                return;
+            }
+            if (slot >= 0) {
+                release(slot);
+            }
+            if (removedWhileLoading != null) {
+                removedWhileLoading.add(change.postId());
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Bulk load, e.g. the whole table at startup. The rows come from one long-running query, so a post removed
+    // after that query started must not be put back by it.
+    void beginLoad() {
+        long stamp = lock.writeLock();
+        try {
+            removedWhileLoading = new HashSet<>();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void load(Post post) {
+        if (!enabled) {
+            return;
+        }
+        byte[] json = encode(post);
+        long stamp = lock.writeLock();
+        try {
+            if (removedWhileLoading == null || !removedWhileLoading.contains(post.id())) {
+                store(post.id(), json, versionOf(post));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void endLoad() {
+        long stamp = lock.writeLock();
+        try {
+            removedWhileLoading = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private byte[] encode(Post post) {
+        try {
+            return objectMapper.writeValueAsBytes(post);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Record layout: int version, int length, then the JSON bytes
+    private Hit read(int id) {
+        int[] keys = this.keys;
+        long[] refs = this.refs;
+        int mask = keys.length - 1;
+        for (int i = mix(id) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long ref = refs[i];
+            if (ref == EMPTY) {
+                return null;
+            }
+            if (ref != REMOVED && keys[i] == id) {
+                ByteBuffer slab = slabs[(int) (ref >>> 32)];
+                int offset = (int) ref;
+                int version = slab.getInt(offset);
+                int length = slab.getInt(offset + 4);
+                // Only possible in an optimistic read that raced a writer; validation throws the result away
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    throw new IllegalStateException("Torn read");
+                }
+                byte[] json = new byte[length];
+                slab.get(offset + HEADER_SIZE, json);
+                return new Hit(json, version == NO_VERSION ? null : version);
+            }
+        }
+        return null;
+    }
+
+    // Everything below runs under the write lock
+
+    private void store(int id, byte[] json, int version) {
+        int slot = slotOf(id);
+        if (slot >= 0 && compareVersions(versionAt(slot), version) > 0) {
+            return;
+        }
+        int length = HEADER_SIZE + json.length;
+        if (length > MAX_RECORD_SIZE || !reserve(length)) {
+            increment(rejectedCounter);
+            // Better absent than stale: the next read goes to the repository
+            if (slot >= 0) {
+                release(slot);
+            }
+            return;
+        }
+        ByteBuffer slab = slabs[tail];
+        slab.putInt(tailPosition, version);
+        slab.putInt(tailPosition + 4, json.length);
+        slab.put(tailPosition + HEADER_SIZE, json);
+        long ref = (long) tail << 32 | tailPosition;
+        slabLiveBytes[tail] += length;
+        tailPosition += length;
+        if (slot >= 0) {
+            free(refs[slot]);
+            refs[slot] = ref;
+            return;
+        }
+        insert(id, ref);
+    }
+
+    private void remove(int id) {
+        int slot = slotOf(id);
+        if (slot >= 0) {
+            release(slot);
+        }
+    }
+
+    private int versionAt(int slot) {
+        long ref = refs[slot];
+        return slabs[(int) (ref >>> 32)].getInt((int) ref);
+    }
+
+    private void release(int slot) {
+        free(refs[slot]);
+        refs[slot] = REMOVED;
+        size--;
+    }
+
+    private void free(long ref) {
+        ByteBuffer slab = slabs[(int) (ref >>> 32)];
+        slabLiveBytes[(int) (ref >>> 32)] -= HEADER_SIZE + slab.getInt((int) ref + 4);
+    }
+
+    private int slotOf(int id) {
+        int mask = keys.length - 1;
+        for (int i = mix(id) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            if (refs[i] == EMPTY) {
+                return -1;
+            }
+            if (refs[i] != REMOVED && keys[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int id, long ref) {
+        // Removed slots count as used until a resize clears them, so probe chains stay short
+        if ((used + 1) * 4L > keys.length * 3L) {
+            resize(size * 4 > keys.length ? keys.length * 2 : keys.length);
+        }
+        int mask = keys.length - 1;
+        int i = mix(id) & mask;
+        while (refs[i] != EMPTY && refs[i] != REMOVED) {
+            i = (i + 1) & mask;
+        }
+        if (refs[i] == EMPTY) {
+            used++;
+        }
+        keys[i] = id;
+        refs[i] = ref;
+        size++;
+    }
+
+    // Builds new arrays and swaps them in, so an optimistic reader sees either the old or the new table
+    private void resize(int capacity) {
+        int[] newKeys = new int[capacity];
+        long[] newRefs = new long[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (refs[j] != EMPTY && refs[j] != REMOVED) {
+                int i = mix(keys[j]) & mask;
+                while (newRefs[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = keys[j];
+                newRefs[i] = refs[j];
+            }
+        }
+        keys = newKeys;
+        refs = newRefs;
+        used = size;
+    }
+
+    // Makes room for length bytes at the tail: a new slab while under the maximum size, else the emptiest
+    // slab's live records are moved to a fresh one and the old one is dropped
+    private boolean reserve(int length) {
+        if (tailPosition + length <= SLAB_SIZE) {
+            return true;
+        }
+        int free = freeSlab();
+        if (allocatedSlabs() < maxSlabs) {
+            startSlab(free);
+            return true;
+        }
+        int victim = -1;
+        for (int s = 0; s < slabs.length; s++) {
+            if (slabs[s] != null && s != tail && (victim < 0 || slabLiveBytes[s] < slabLiveBytes[victim])) {
+                victim = s;
+            }
+        }
+        // Compacting a mostly live slab frees too little to be worth it: the store is full
+        if (victim < 0 || slabLiveBytes[victim] + length > SLAB_SIZE / 2) {
+            return false;
+        }
+        // The one slab allowed over the maximum, for as long as the move takes
+        startSlab(free);
+        for (int i = 0; i < keys.length; i++) {
+            long ref = refs[i];
+            if (ref != EMPTY && ref != REMOVED && (int) (ref >>> 32) == victim) {
+                ByteBuffer from = slabs[victim];
+                int recordLength = HEADER_SIZE + from.getInt((int) ref + 4);
+                slabs[tail].put(tailPosition, from, (int) ref, recordLength);
+                refs[i] = (long) tail << 32 | tailPosition;
+                slabLiveBytes[tail] += recordLength;
+                tailPosition += recordLength;
+            }
+        }
+        slabs[victim] = null;
+        slabLiveBytes[victim] = 0;
+        return true;
+    }
+
+    private void startSlab(int index) {
+        slabs[index] = ByteBuffer.allocateDirect(SLAB_SIZE);
+        slabLiveBytes[index] = 0;
+        tail = index;
+        tailPosition = 0;
+    }
+
+    private int freeSlab() {
+        for (int s = 0; s < slabs.length; s++) {
+            if (slabs[s] == null) {
+                return s;
+            }
+        }
+        throw new IllegalStateException("No free slab");
+    }
+
+    private int allocatedSlabs() {
+        int count = 0;
+        for (ByteBuffer slab : slabs) {
+            count += slab == null ? 0 : 1;
+        }
+        return count;
+    }
+
+    private long allocatedBytes() {
+        return (long) allocatedSlabs() * SLAB_SIZE;
+    }
+
+    private long liveBytes() {
+        long live = 0;
+        for (int bytes : slabLiveBytes) {
+            live += bytes;
+        }
+        return live;
+    }
+
+    private static int compareVersions(int existing, int candidate) {
+        return Integer.compare(existing == NO_VERSION ? -1 : existing, candidate == NO_VERSION ? -1 : candidate);
+    }
+
+    private static int versionOf(Post post) {
+        return post.version() == null ? NO_VERSION : post.version();
+    }
+
+    // Sequential ids would otherwise fill runs of neighbouring slots and make probe chains long
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        Gauge.builder("posts.hot-store.posts", this, PostHotStore::size)
+                .description("Posts held in the off-heap hot store")
+                .register(registry);
+        Gauge.builder("posts.hot-store.allocated", this, store -> store.locked(store::allocatedBytes))
+                .description("Off-heap memory taken by hot store slabs")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("posts.hot-store.live", this, store -> store.locked(store::liveBytes))
+                .description("Bytes of hot store slabs holding current posts")
+                .baseUnit("bytes")
+                .register(registry);
+        hitCounter = Counter.builder("posts.hot-store.requests").tag("result", "hit")
+                .description("Hot store lookups")
+                .register(registry);
+        missCounter = Counter.builder("posts.hot-store.requests").tag("result", "miss")
+                .description("Hot store lookups")
+                .register(registry);
+        rejectedCounter = Counter.builder("posts.hot-store.rejected")
+                .description("Posts not stored because they were too large or the store was full")
+                .register(registry);
+    }
+
+    private double locked(LongSupplier supplier) {
+        long stamp = lock.readLock();
+        try {
+            return supplier.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
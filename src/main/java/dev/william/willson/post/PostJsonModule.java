@@ -0,0 +1,240 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hand-written JSON for Post and Posts, used by every ObjectMapper Spring Boot builds: responses, the page cache,
+// the hot store, NDJSON streams, bulk ingestion and seeding. posts.json.codec=jackson goes back to Jackson's own
+// record handling.
+// Writing goes field by field to the generator with field names encoded once, here, instead of walking bean
+// properties; the generator's buffers are Jackson's recycled ones. Reading matches fields by name and builds the
+// record directly.
+// The output is the same bytes as Jackson's: fields in declaration order, nulls included. Input Jackson would
+// coerce (a number as a string, say) is handed back to Jackson, and unknown fields follow FAIL_ON_UNKNOWN_PROPERTIES.
+@Component
+@ConditionalOnProperty(name = "posts.json.codec", havingValue = "direct", matchIfMissing = true)
+public class PostJsonModule extends SimpleModule {
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString TITLE = new SerializedString("title");
+    private static final SerializedString BODY = new SerializedString("body");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString POSTS = new SerializedString("posts");
+
+    public PostJsonModule() {
+        super("PostJsonModule");
+        PostSerializer postSerializer = new PostSerializer();
+        PostDeserializer postDeserializer = new PostDeserializer();
+        addSerializer(Post.class, postSerializer);
+        addDeserializer(Post.class, postDeserializer);
+        addSerializer(Posts.class, new PostsSerializer(postSerializer));
+        addDeserializer(Posts.class, new PostsDeserializer(postDeserializer));
+    }
+
+    // Also writes Post's fields into an enclosing object, for @JsonUnwrapped as in PostSearchHit
+    static final class PostSerializer extends StdSerializer<Post> {
+
+        private final SerializedString id;
+        private final SerializedString userId;
+        private final SerializedString title;
+        private final SerializedString body;
+        private final SerializedString version;
+        private final boolean unwrapping;
+
+        PostSerializer() {
+            this(ID, USER_ID, TITLE, BODY, VERSION, false);
+        }
+
+        private PostSerializer(SerializedString id, SerializedString userId, SerializedString title,
+                               SerializedString body, SerializedString version, boolean unwrapping) {
+            super(Post.class);
+            this.id = id;
+            this.userId = userId;
+            this.title = title;
+            this.body = body;
+            this.version = version;
+            this.unwrapping = unwrapping;
+        }
+
+        @Override
+        public void serialize(Post post, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (!unwrapping) {
+                generator.writeStartObject(post);
+            }
+            writeInteger(generator, id, post.id());
+            writeInteger(generator, userId, post.userId());
+            generator.writeFieldName(title);
+            generator.writeString(post.title());
+            generator.writeFieldName(body);
+            generator.writeString(post.body());
+            writeInteger(generator, version, post.version());
+            if (!unwrapping) {
+                generator.writeEndObject();
+            }
+        }
+
+        @Override
+        public JsonSerializer<Post> unwrappingSerializer(NameTransformer names) {
+            return new PostSerializer(rename(names, id), rename(names, userId), rename(names, title),
+                    rename(names, body), rename(names, version), true);
+        }
+
+        @Override
+        public boolean isUnwrappingSerializer() {
+            return unwrapping;
+        }
+
+        private static SerializedString rename(NameTransformer names, SerializedString name) {
+            return new SerializedString(names.transform(name.getValue()));
+        }
+
+        private static void writeInteger(JsonGenerator generator, SerializedString name, Integer value) throws IOException {
+            generator.writeFieldName(name);
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(value.intValue());
+            }
+        }
+    }
+
+    static final class PostDeserializer extends StdDeserializer<Post> {
+
+        PostDeserializer() {
+            super(Post.class);
+        }
+
+        @Override
+        public Post deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = parser.nextToken();
+            } else if (token != JsonToken.FIELD_NAME) {
+                return (Post) context.handleUnexpectedToken(Post.class, parser);
+            }
+            Integer id = null;
+            Integer userId = null;
+            String title = null;
+            String body = null;
+            Integer version = null;
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String name = parser.currentName();
+                parser.nextToken();
+                try {
+                    switch (name) {
+                        case "id" -> id = readInteger(parser, context);
+                        case "userId" -> userId = readInteger(parser, context);
+                        case "title" -> title = readString(parser, context);
+                        case "body" -> body = readString(parser, context);
+                        case "version" -> version = readInteger(parser, context);
+                        default -> context.handleUnknownProperty(parser, this, Post.class, name);
+                    }
+                } catch (IOException e) {
+                    throw JsonMappingException.wrapWithPath(e, Post.class, name);
+                }
+            }
+            return new Post(id, userId, title, body, version);
+        }
+
+        private static Integer readInteger(JsonParser parser, DeserializationContext context) throws IOException {
+            return switch (parser.currentToken()) {
+                case VALUE_NUMBER_INT -> parser.getIntValue();
+                case VALUE_NULL -> null;
+                default -> context.readValue(parser, Integer.class);
+            };
+        }
+
+        private static String readString(JsonParser parser, DeserializationContext context) throws IOException {
+            return switch (parser.currentToken()) {
+                case VALUE_STRING -> parser.getText();
+                case VALUE_NULL -> null;
+                default -> context.readValue(parser, String.class);
+            };
+        }
+    }
+
+    static final class PostsSerializer extends StdSerializer<Posts> {
+
+        private final PostSerializer postSerializer;
+
+        PostsSerializer(PostSerializer postSerializer) {
+            super(Posts.class);
+            this.postSerializer = postSerializer;
+        }
+
+        @Override
+        public void serialize(Posts posts, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(posts);
+            generator.writeFieldName(POSTS);
+            if (posts.posts() == null) {
+                generator.writeNull();
+            } else {
+                generator.writeStartArray(posts.posts(), posts.posts().size());
+                for (Post post : posts.posts()) {
+                    if (post == null) {
+                        generator.writeNull();
+                    } else {
+                        postSerializer.serialize(post, generator, provider);
+                    }
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    static final class PostsDeserializer extends StdDeserializer<Posts> {
+
+        private final PostDeserializer postDeserializer;
+
+        PostsDeserializer(PostDeserializer postDeserializer) {
+            super(Posts.class);
+            this.postDeserializer = postDeserializer;
+        }
+
+        @Override
+        public Posts deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = parser.nextToken();
+            } else if (token != JsonToken.FIELD_NAME) {
+                return (Posts) context.handleUnexpectedToken(Posts.class, parser);
+            }
+            List<Post> posts = null;
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!name.equals("posts")) {
+                    context.handleUnknownProperty(parser, this, Posts.class, name);
+                } else if (value == JsonToken.VALUE_NULL) {
+                    posts = null;
+                } else if (value != JsonToken.START_ARRAY) {
+                    posts = context.readValue(parser, context.getTypeFactory().constructCollectionType(List.class, Post.class));
+                } else {
+                    posts = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        posts.add(parser.currentToken() == JsonToken.VALUE_NULL ? null : postDeserializer.deserialize(parser, context));
+                    }
+                }
+            }
+            return new Posts(posts);
+        }
+    }
+}
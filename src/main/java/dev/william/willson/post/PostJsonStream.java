@@ -0,0 +1,85 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads posts one at a time from a JSON array, a run of root-level objects (NDJSON)
+// or the array under a field of a root object, without ever holding the whole document
+class PostJsonStream implements Closeable {
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final boolean inArray;
+
+    private PostJsonStream(ObjectMapper objectMapper, JsonParser parser, boolean inArray) {
+        this.objectMapper = objectMapper;
+        this.parser = parser;
+        this.inArray = inArray;
+    }
+
+    static PostJsonStream of(ObjectMapper objectMapper, InputStream inputStream) throws IOException {
+        JsonParser parser = objectMapper.createParser(inputStream);
+        boolean inArray = parser.nextToken() == JsonToken.START_ARRAY;
+        if (inArray) {
+            parser.nextToken();
+        }
+        return new PostJsonStream(objectMapper, parser, inArray);
+    }
+
+    // e.g. ofField(objectMapper, in, "posts") for {"posts": [...]}
+    static PostJsonStream ofField(ObjectMapper objectMapper, InputStream inputStream, String field) throws IOException {
+        JsonParser parser = objectMapper.createParser(inputStream);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object with a \"" + field + "\" array");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            JsonToken value = parser.nextToken();
+            if (field.equals(parser.currentName()) && value == JsonToken.START_ARRAY) {
+                parser.nextToken();
+                return new PostJsonStream(objectMapper, parser, true);
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("No \"" + field + "\" array found");
+    }
+
+    // The next row, or null once the input is exhausted. Rows are mapped straight from the parser, with no tree
+    // in between. A row that isn't a valid post throws JsonMappingException with the stream already past it, so
+    // reading can go on; malformed JSON throws JsonParseException, and nothing after it can be read.
+    Post next() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null || (inArray && token == JsonToken.END_ARRAY)) {
+            return null;
+        }
+        // The context rows sit in; a row that starts an object or array has already opened one of its own
+        JsonStreamContext rows = token.isStructStart() ? parser.getParsingContext().getParent() : parser.getParsingContext();
+        Post post;
+        try {
+            post = parser.readValueAs(Post.class);
+            if (post == null) {
+                throw MismatchedInputException.from(parser, Post.class, "Expected a post object, got null");
+            }
+        } catch (JsonMappingException e) {
+            while (parser.getParsingContext() != rows) {
+                parser.nextToken();
+            }
+            parser.nextToken();
+            throw e;
+        }
+        parser.nextToken();
+        return post;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
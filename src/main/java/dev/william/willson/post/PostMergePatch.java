@@ -0,0 +1,75 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.william.willson.globalException.BadRequestException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// A JSON Merge Patch (RFC 7396) for one post. Absent fields stay as they are (null here);
+// "version" is the version the client last saw, checked by the update rather than written.
+record PostMergePatch(String title, String body, Integer version) {
+
+    // current is only read when the patch names userId
+    static PostMergePatch parse(JsonNode patch, int id, Validator validator, Supplier<Optional<Post>> current) {
+        if (!patch.isObject()) {
+            throw new BadRequestException("Merge patch must be a JSON object");
+        }
+        List<String> violations = new ArrayList<>();
+        String title = null;
+        String body = null;
+        Integer version = null;
+        for (Map.Entry<String, JsonNode> field : patch.properties()) {
+            JsonNode value = field.getValue();
+            switch (field.getKey()) {
+                case "title" -> title = text(field.getKey(), value, validator, violations);
+                case "body" -> body = text(field.getKey(), value, validator, violations);
+                case "version" -> {
+                    if (value.isInt()) {
+                        version = value.intValue();
+                    } else if (!value.isNull()) {
+                        violations.add("version: must be an integer");
+                    }
+                }
+                case "id" -> {
+                    if (!value.isInt() || value.intValue() != id) {
+                        violations.add("id: cannot be changed");
+                    }
+                }
+                // Like id, it may be sent back as it is, e.g. in a whole document the client fetched.
+                // For a missing post there is nothing to compare with, and the update answers 404.
+                case "userId" -> current.get().ifPresent(post -> {
+                    Integer userId = value.isInt() ? Integer.valueOf(value.intValue()) : null;
+                    if ((userId == null && !value.isNull()) || !Objects.equals(userId, post.userId())) {
+                        violations.add("userId: cannot be changed");
+                    }
+                });
+                default -> violations.add(field.getKey() + ": unknown property");
+            }
+        }
+        if (!violations.isEmpty()) {
+            violations.sort(null);
+            throw new BadRequestException(String.join(", ", violations));
+        }
+        return new PostMergePatch(title, body, version);
+    }
+
+    // Removing a field (null) is checked against the same constraints as setting it
+    private static String text(String property, JsonNode value, Validator validator, List<String> violations) {
+        if (!value.isTextual() && !value.isNull()) {
+            violations.add(property + ": must be a string");
+            return null;
+        }
+        String text = value.textValue();
+        for (ConstraintViolation<Post> violation : validator.validateValue(Post.class, property, text)) {
+            violations.add(property + ": " + violation.getMessage());
+        }
+        return text;
+    }
+}
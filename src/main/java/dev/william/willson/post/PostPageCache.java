@@ -0,0 +1,109 @@
+package dev.william.willson.post;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.william.willson.datasource.ReadRouting;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+// Already-serialized list pages, so a repeated GET /api/posts is a byte copy instead of a query plus Jackson.
+// Every committed write bumps the generation. A page built under an older generation is neither served nor
+// stored, so a reader that raced a write can't cache what it read before the commit.
+@Component
+public class PostPageCache implements MeterBinder {
+
+    // Bodies are gzipped once, when the page is stored, if they are at least posts.page-cache.gzip-min-size
+    public record Page(byte[] json, byte[] gzip, String eTag, String link) {
+    }
+
+    private record Key(int after, int limit) {
+    }
+
+    private record Entry(Page page, long generation) {
+    }
+
+    private final boolean enabled;
+    private final Cache<Key, Entry> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final long gzipMinSize;
+    private final Duration replicaLag;
+
+    public PostPageCache(@Value("${posts.page-cache.enabled:true}") boolean enabled,
+                         @Value("${posts.page-cache.maximum-size:64MB}") DataSize maximumSize,
+                         @Value("${posts.page-cache.ttl:1m}") Duration ttl,
+                         @Value("${posts.page-cache.gzip-min-size:1KB}") DataSize gzipMinSize,
+                         @Value("${posts.datasource.read-your-writes-window:5s}") Duration replicaLag) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumSize.toBytes())
+                .weigher((Key key, Entry entry) -> entry.page().json().length
+                        + (entry.page().gzip() == null ? 0 : entry.page().gzip().length))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.gzipMinSize = gzipMinSize.toBytes();
+        this.replicaLag = replicaLag;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "post-pages");
+    }
+
+    // after/limit of null (the whole table) are keyed as -1. Disabled, every page is rendered and left to server.compression.
+    public Page get(Integer after, Integer limit, Supplier<Page> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(after == null ? -1 : after, limit == null ? -1 : limit);
+        long current = generation.get();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation() == current) {
+            return entry.page();
+        }
+        Page page = ReadRouting.refill(replicaLag, loader);
+        if (page.gzip() == null && page.json().length >= gzipMinSize) {
+            page = new Page(page.json(), gzip(page.json()), page.eTag(), page.link());
+        }
+        if (generation.get() == current) {
+            cache.put(key, new Entry(page, current));
+        }
+        return page;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // Called by the repository write paths; an uncommitted write must not drop pages other readers still see.
+    // Every write path comes through here, so it also starts the window in which refills stay on the primary.
+    void invalidateAfterCommit() {
+        PostCache.afterCommit(() -> {
+            ReadRouting.recordWrite();
+            invalidate();
+        });
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 8192)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
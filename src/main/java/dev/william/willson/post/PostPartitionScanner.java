@@ -0,0 +1,268 @@
+package dev.william.willson.post;
+
+import dev.william.willson.datasource.ReadRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Whole-table reads of a hash-partitioned post table (schema-partitioned.sql), split across up to
+// posts.partition-scan.threads connections. Each worker reads its share of the partitions in id order in a
+// read-only transaction of its own; the caller merges their rows back into one id-ordered stream.
+// Each partition is read in one snapshot, and a post never changes partition, but two partitions may be read a
+// moment apart, so a multi-row write can show up in one and not yet in another.
+// The threads setting caps worker connections across all scans at once. A scan takes all its permits together,
+// so two scans can't each hold half of them while waiting on the other half.
+@Component
+public class PostPartitionScanner {
+
+    private static final String COLUMNS = "id, user_id, title, body, version";
+    // Marks the end of a worker's rows in its queue
+    private static final Post END = new Post(null, null, null, null, null);
+
+    private final JdbcTemplate cursorJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int threads;
+    private final int fetchSize;
+    private final Semaphore permits;
+
+    // Looked up once: hash partitions can't be added to a table without rewriting it
+    private volatile List<String> partitions;
+
+    public PostPartitionScanner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                @Value("${posts.partition-scan.threads:4}") int threads,
+                                @Value("${posts.stream.fetch-size:500}") int fetchSize) {
+        this.cursorJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorJdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.threads = Math.max(1, threads);
+        this.fetchSize = fetchSize;
+        this.permits = new Semaphore(this.threads);
+    }
+
+    // False when the table isn't partitioned, when scans are set to one thread, and inside a read-write
+    // transaction, whose own uncommitted rows other connections wouldn't see
+    boolean isParallel() {
+        if (threads < 2 || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return false;
+        }
+        return partitions().size() > 1;
+    }
+
+    List<String> partitions() {
+        List<String> partitions = this.partitions;
+        if (partitions == null) {
+            partitions = List.copyOf(cursorJdbcTemplate.queryForList(
+                    "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = 'post'::regclass ORDER BY inhrelid",
+                    String.class));
+            this.partitions = partitions;
+        }
+        return partitions;
+    }
+
+    long count() {
+        AtomicLong count = new AtomicLong();
+        List<List<String>> groups = groups();
+        permits.acquireUninterruptibly(groups.size());
+        try {
+            List<Worker> workers = new ArrayList<>();
+            for (List<String> group : groups) {
+                workers.add(start(() -> {
+                    for (String partition : group) {
+                        count.addAndGet(cursorJdbcTemplate.queryForObject("SELECT count(*) FROM " + partition, Long.class));
+                    }
+                }));
+            }
+            for (Worker worker : workers) {
+                worker.join();
+                worker.rethrow();
+            }
+        } finally {
+            permits.release(groups.size());
+        }
+        return count.get();
+    }
+
+    // Every post with id > after (all of them for null), in id order
+    void scan(Integer after, Consumer<Post> action) {
+        List<List<String>> groups = groups();
+        List<Cursor> cursors = new ArrayList<>();
+        permits.acquireUninterruptibly(groups.size());
+        try {
+            for (List<String> group : groups) {
+                Cursor cursor = new Cursor();
+                cursor.worker = start(() -> cursor.fill(group, after));
+                cursors.add(cursor);
+            }
+            PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparing((Cursor cursor) -> cursor.head.id()));
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                action.accept(cursor.head);
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+        } finally {
+            // Stops workers still reading when the action threw, e.g. an export client hung up
+            for (Cursor cursor : cursors) {
+                cursor.cancelled = true;
+            }
+            for (Cursor cursor : cursors) {
+                cursor.worker.join();
+            }
+            permits.release(groups.size());
+        }
+    }
+
+    // Partition i goes to worker i % workers
+    private List<List<String>> groups() {
+        List<String> partitions = partitions();
+        int workers = Math.min(threads, partitions.size());
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            groups.get(i % workers).add(partitions.get(i));
+        }
+        return groups;
+    }
+
+    // Runs task in a read-only transaction on a thread of its own, routed like the caller's reads
+    private Worker start(Runnable task) {
+        boolean pinned = ReadRouting.isPinnedToPrimary();
+        Worker worker = new Worker();
+        worker.thread = Thread.ofVirtual().name("post-scan").start(() -> {
+            if (pinned) {
+                ReadRouting.pinToPrimary();
+            }
+            try {
+                readOnlyTransaction.executeWithoutResult(status -> task.run());
+            } catch (Throwable e) {
+                worker.failure = e;
+            } finally {
+                ReadRouting.clear();
+            }
+        });
+        return worker;
+    }
+
+    private static final class Worker {
+
+        private Thread thread;
+        private volatile Throwable failure;
+
+        void join() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void rethrow() {
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+            if (failure instanceof Error e) {
+                throw e;
+            }
+        }
+    }
+
+    // One worker's rows on their way to the merge, at most fetchSize of them buffered
+    private final class Cursor {
+
+        private final BlockingQueue<Post> queue = new ArrayBlockingQueue<>(fetchSize);
+        private Worker worker;
+        private Post head;
+        private volatile boolean cancelled;
+
+        // Worker side: the partitions' rows in id order, then END
+        void fill(List<String> group, Integer after) {
+            List<String> selects = new ArrayList<>();
+            for (String partition : group) {
+                selects.add("SELECT " + COLUMNS + " FROM " + partition + (after == null ? "" : " WHERE id > ?"));
+            }
+            String sql = String.join(" UNION ALL ", selects) + " ORDER BY id";
+            Object[] args = after == null ? new Object[0] : Collections.nCopies(group.size(), after).toArray();
+            try {
+                cursorJdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                        offer(PostRepositoryCustomImpl.POST_ROW_MAPPER.mapRow(rs, rs.getRow())), args);
+            } finally {
+                offer(END);
+            }
+        }
+
+        private void offer(Post post) {
+            try {
+                while (!queue.offer(post, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancellationException("Partition scan cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Partition scan interrupted");
+            }
+        }
+
+        // Merge side: moves head to the worker's next row, false once it has none left.
+        // Polls rather than takes: a worker that failed before fill() ran, e.g. without a connection, never sends END.
+        boolean advance() {
+            Post next;
+            try {
+                next = queue.poll(100, TimeUnit.MILLISECONDS);
+                while (next == null) {
+                    if (worker.thread.isAlive()) {
+                        next = queue.poll(100, TimeUnit.MILLISECONDS);
+                    } else if ((next = queue.poll()) == null) {
+                        worker.join();
+                        worker.rethrow();
+                        throw new IllegalStateException("Partition scan worker stopped without finishing");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Partition scan interrupted");
+            }
+            if (next == END) {
+                worker.join();
+                worker.rethrow();
+                return false;
+            }
+            head = next;
+            return true;
+        }
+    }
+}
@@ -1,9 +1,21 @@
 package dev.william.willson.post;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
-public interface PostRepository extends ListCrudRepository<Post, Integer> {
+public interface PostRepository extends ListCrudRepository<Post, Integer>, CachingPostRepository<Post, Integer>,
+        PostRepositoryCustom {
+    // Derived queries are read-only so they can go to a replica; inside a caller's transaction they join it
+    @Transactional(readOnly = true)
     List<Post> findByTitle(String title);
+
+    // Keyset page: seeks past the last id the client saw instead of counting an OFFSET
+    @Transactional(readOnly = true)
+    List<Post> findByIdGreaterThanOrderById(Integer after, Limit limit);
+
+    @Transactional(readOnly = true)
+    List<Post> findByUserIdAndIdGreaterThanOrderById(Integer userId, Integer after, Limit limit);
 }
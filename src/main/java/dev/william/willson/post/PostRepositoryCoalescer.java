@@ -0,0 +1,133 @@
+package dev.william.willson.post;
+
+import dev.william.willson.datasource.ReadRouting;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single-flight for the list queries: concurrent calls with the same method and arguments share one query and
+// its result instead of each taking a connection. findById needs none of this, PostCache already loads a post
+// once however many ask. Wraps the repository last, outside PostRepositoryLimiter, so waiting callers hold no
+// database permit.
+// A caller never joins a query that started before a write it could have seen: committed writes move the
+// generation on, and the generation is part of the key. Calls inside a transaction always run on their own.
+@Component
+public class PostRepositoryCoalescer implements BeanPostProcessor, MethodInterceptor, MeterBinder, Ordered {
+
+    static final Set<String> COALESCED_METHODS = Set.of("findAll", "findByTitle", "findByIdGreaterThanOrderById",
+            "findByUserIdAndIdGreaterThanOrderById", "findSummariesByUserId");
+
+    private record Key(Method method, List<Object> arguments, boolean primary, long generation) {
+    }
+
+    private final boolean enabled;
+    private final Map<Key, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Map<String, Counter> coalescedCounters = Map.of();
+
+    public PostRepositoryCoalescer(@Value("${posts.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || !(bean instanceof PostRepository)) {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(bean);
+        proxyFactory.addInterface(PostRepository.class);
+        proxyFactory.addAdvice(this);
+        return proxyFactory.getProxy(getClass().getClassLoader());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String name = invocation.getMethod().getName();
+        if (name.startsWith("save") || name.startsWith("insert") || name.startsWith("update") || name.startsWith("delete")) {
+            try {
+                return invocation.proceed();
+            } finally {
+                PostCache.afterCommit(generation::incrementAndGet);
+            }
+        }
+        if (!COALESCED_METHODS.contains(name) || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return invocation.proceed();
+        }
+        Key key = new Key(invocation.getMethod(), Arrays.asList(invocation.getArguments()),
+                ReadRouting.isPinnedToPrimary(), generation.get());
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            return join(name, leader);
+        }
+        try {
+            Object result = invocation.proceed();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private Object join(String name, CompletableFuture<Object> leader) throws Throwable {
+        Counter counter = coalescedCounters.get(name);
+        if (counter != null) {
+            counter.increment();
+        }
+        Object result;
+        try {
+            result = leader.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+        // Each caller gets a list of its own; the posts in it are immutable
+        return result instanceof List<?> list ? new ArrayList<>(list) : result;
+    }
+
+    // posts.reads.coalesced{method=findById} is counted by PostCache
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Map<String, Counter> counters = new HashMap<>();
+        for (String method : COALESCED_METHODS) {
+            counters.put(method, coalescedCounter(registry, method));
+        }
+        coalescedCounters = counters;
+    }
+
+    static Counter coalescedCounter(MeterRegistry registry, String method) {
+        return Counter.builder("posts.reads.coalesced")
+                .description("Reads that shared a query already in flight instead of running their own")
+                .tag("method", method)
+                .register(registry);
+    }
+}
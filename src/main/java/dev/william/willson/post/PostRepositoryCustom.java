@@ -0,0 +1,70 @@
+package dev.william.willson.post;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface PostRepositoryCustom {
+
+    // Walks every post with id > after in id order, reading rows from a server-side cursor.
+    // On a partitioned table this, findAll and count read the partitions in parallel (PostPartitionScanner).
+    void streamAll(int after, Consumer<Post> action);
+
+    // Every post, in id order
+    List<Post> findAll();
+
+    long count();
+
+    // Copies every post with id > after in id order to out with COPY ... TO STDOUT, returning the row count.
+    // CSV starts with a header line only when after is 0, so a resumed export can be appended to the first part.
+    long copyOut(int after, PostExportFormat format, OutputStream out);
+
+    // Looks the ids up in PostCache and loads the misses with one WHERE id = ANY(?) query. Ids with no post are
+    // left out of the map.
+    Map<Integer, Post> findAllByIds(Collection<Integer> ids);
+
+    // Inserts the posts as one JDBC batch; ids that already exist are skipped and report an update count of 0
+    int[] insertAll(List<Post> posts);
+
+    // Single-statement writes that only touch the row while it is still at the expected version.
+    // An empty result / false means the row is gone or has moved on.
+
+    // Sets only the non-null columns and bumps the version; a null expectedVersion skips the version check
+    Optional<Post> update(int id, Integer expectedVersion, String title, String body);
+
+    boolean deleteIfVersion(int id, int version);
+
+    // Rewrites title and body of each post as one JDBC batch, moving it to the given version, or one past what it
+    // was if that is higher. Reports 1 per written post and 0 where the row is gone or has moved on.
+    int[] updateAll(List<PostUpdate> updates);
+
+    // Keyset page of one user's posts without their bodies, read from the covering (user_id, id) index
+    List<PostSummary> findSummariesByUserId(int userId, int after, int limit);
+
+    // Read from post_user_stats, which triggers keep in step with the post table
+    long countPostsOfUser(int userId);
+
+    List<UserPostCount> countPostsByUser();
+
+    // Change feed, read from the post_change outbox in (xid, seq) order. These read the primary: a lagging replica
+    // would let the feed move past changes it hasn't seen yet.
+
+    // Changes after (afterXid, afterSeq) that no running transaction can land in front of any more
+    List<PostChange> findSettledChanges(long afterXid, long afterSeq, int limit);
+
+    // Changes after (afterXid, afterSeq) up to and including (untilXid, untilSeq), for replaying what a client missed
+    List<PostChange> findChanges(long afterXid, long afterSeq, long untilXid, long untilSeq, int limit);
+
+    Optional<PostChange> findChange(long seq);
+
+    Optional<PostChange> findLastSettledChange();
+
+    int deleteChangesBefore(Instant before);
+
+    // Full-text search over title and body, best match first; pages continue after (afterRank, afterId)
+    List<PostSearchHit> search(String query, float afterRank, int afterId, int limit, boolean highlight);
+}
@@ -0,0 +1,335 @@
+package dev.william.willson.post;
+
+import dev.william.willson.datasource.ReadRouting;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.DataClassRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+class PostRepositoryCustomImpl implements PostRepositoryCustom {
+
+    static final RowMapper<Post> POST_ROW_MAPPER = new DataClassRowMapper<>(Post.class);
+    static final RowMapper<PostSummary> SUMMARY_ROW_MAPPER = new DataClassRowMapper<>(PostSummary.class);
+    static final RowMapper<UserPostCount> COUNT_ROW_MAPPER = new DataClassRowMapper<>(UserPostCount.class);
+    static final RowMapper<PostChange> CHANGE_ROW_MAPPER = new DataClassRowMapper<>(PostChange.class);
+
+    private static final String CHANGE_COLUMNS = "seq, xid::text::bigint AS xid, post_id, version, type";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorJdbcTemplate;
+    private final PostCache postCache;
+    private final PostPageCache postPageCache;
+    private final PostHotStore postHotStore;
+    private final PostPartitionScanner postPartitionScanner;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration replicaLag;
+
+    PostRepositoryCustomImpl(JdbcTemplate jdbcTemplate, PostCache postCache, PostPageCache postPageCache,
+                             PostHotStore postHotStore, PostPartitionScanner postPartitionScanner,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${posts.stream.fetch-size:500}") int fetchSize,
+                             @Value("${posts.datasource.read-your-writes-window:5s}") Duration replicaLag) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postCache = postCache;
+        this.postPageCache = postPageCache;
+        this.postHotStore = postHotStore;
+        this.postPartitionScanner = postPartitionScanner;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.replicaLag = replicaLag;
+        // Postgres only honours the fetch size inside a transaction; otherwise the driver buffers the whole result
+        this.cursorJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorJdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(int after, Consumer<Post> action) {
+        if (postPartitionScanner.isParallel()) {
+            postPartitionScanner.scan(after, action);
+            return;
+        }
+        cursorJdbcTemplate.query("SELECT id, user_id, title, body, version FROM post WHERE id > ? ORDER BY id",
+                (RowCallbackHandler) rs -> action.accept(POST_ROW_MAPPER.mapRow(rs, rs.getRow())),
+                after);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Post> findAll() {
+        if (postPartitionScanner.isParallel()) {
+            List<Post> posts = new ArrayList<>();
+            postPartitionScanner.scan(null, posts::add);
+            return posts;
+        }
+        return jdbcTemplate.query("SELECT id, user_id, title, body, version FROM post ORDER BY id", POST_ROW_MAPPER);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long count() {
+        if (postPartitionScanner.isParallel()) {
+            return postPartitionScanner.count();
+        }
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM post", Long.class);
+    }
+
+    // Stays one COPY on a partitioned table too: PostgreSQL reads the partitions' id indexes in step (Merge Append),
+    // and the bytes it writes can't be merged back into id order without parsing them
+    @Override
+    @Transactional(readOnly = true)
+    public long copyOut(int after, PostExportFormat format, OutputStream out) {
+        if (format.copyOptions() == null) {
+            throw new IllegalArgumentException(format + " is not a COPY format");
+        }
+        // COPY takes no bind parameters; after is an int, so inlining it is safe
+        String sql = "COPY (SELECT id, user_id, title, body, version FROM post WHERE id > " + after + " ORDER BY id) TO STDOUT WITH ("
+                + format.copyOptions() + (format == PostExportFormat.CSV && after == 0 ? ", HEADER" : "") + ")";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public Map<Integer, Post> findAllByIds(Collection<Integer> ids) {
+        // Same rules as findById: no caching inside a read-write transaction, and misses load read-only, so a
+        // replica serves them unless this node wrote recently
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return loadAllByIds(ids);
+        }
+        return postCache.getAll(ids, missing -> ReadRouting.refill(replicaLag,
+                () -> readOnlyTransaction.execute(status -> loadAllByIds(missing))));
+    }
+
+    // One array parameter rather than IN (?, ?, ...), so every batch size shares one prepared statement
+    private Map<Integer, Post> loadAllByIds(Collection<Integer> ids) {
+        Map<Integer, Post> posts = new HashMap<>();
+        if (ids.isEmpty()) {
+            return posts;
+        }
+        Integer[] array = ids.toArray(Integer[]::new);
+        jdbcTemplate.query("SELECT id, user_id, title, body, version FROM post WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", array)),
+                (RowCallbackHandler) rs -> {
+                    Post post = POST_ROW_MAPPER.mapRow(rs, rs.getRow());
+                    posts.put(post.id(), post);
+                });
+        return posts;
+    }
+
+    @Override
+    @Transactional
+    public int[] insertAll(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return new int[0];
+        }
+        postPageCache.invalidateAfterCommit();
+        return jdbcTemplate.batchUpdate("""
+                        INSERT INTO post (id, user_id, title, body, version) VALUES (?, ?, ?, ?, 0)
+                        ON CONFLICT (id) DO NOTHING""",
+                posts,
+                posts.size(),
+                (ps, post) -> {
+                    ps.setInt(1, post.id());
+                    ps.setInt(2, post.userId());
+                    ps.setString(3, post.title());
+                    ps.setString(4, post.body());
+                })[0];
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PostSummary> findSummariesByUserId(int userId, int after, int limit) {
+        return jdbcTemplate.query("SELECT id, title, version FROM post WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?",
+                SUMMARY_ROW_MAPPER, userId, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countPostsOfUser(int userId) {
+        return jdbcTemplate.query("SELECT post_count FROM post_user_stats WHERE user_id = ?",
+                (rs, rowNum) -> rs.getLong(1), userId).stream().findFirst().orElse(0L);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserPostCount> countPostsByUser() {
+        return jdbcTemplate.query("SELECT user_id, post_count FROM post_user_stats WHERE post_count > 0 ORDER BY user_id",
+                COUNT_ROW_MAPPER);
+    }
+
+    // Not read-only transactions, so they stay on the primary when replicas are configured
+
+    @Override
+    public List<PostChange> findSettledChanges(long afterXid, long afterSeq, int limit) {
+        return jdbcTemplate.query("SELECT " + CHANGE_COLUMNS + """
+                         FROM post_change
+                        WHERE (xid, seq) > (?::text::xid8, ?) AND xid < pg_snapshot_xmin(pg_current_snapshot())
+                        ORDER BY xid, seq LIMIT ?""",
+                CHANGE_ROW_MAPPER, afterXid, afterSeq, limit);
+    }
+
+    @Override
+    public List<PostChange> findChanges(long afterXid, long afterSeq, long untilXid, long untilSeq, int limit) {
+        return jdbcTemplate.query("SELECT " + CHANGE_COLUMNS + """
+                         FROM post_change
+                        WHERE (xid, seq) > (?::text::xid8, ?) AND (xid, seq) <= (?::text::xid8, ?)
+                        ORDER BY xid, seq LIMIT ?""",
+                CHANGE_ROW_MAPPER, afterXid, afterSeq, untilXid, untilSeq, limit);
+    }
+
+    @Override
+    public Optional<PostChange> findChange(long seq) {
+        return jdbcTemplate.query("SELECT " + CHANGE_COLUMNS + " FROM post_change WHERE seq = ?",
+                CHANGE_ROW_MAPPER, seq).stream().findFirst();
+    }
+
+    @Override
+    public Optional<PostChange> findLastSettledChange() {
+        return jdbcTemplate.query("SELECT " + CHANGE_COLUMNS + """
+                         FROM post_change
+                        WHERE xid < pg_snapshot_xmin(pg_current_snapshot())
+                        ORDER BY xid DESC, seq DESC LIMIT 1""",
+                CHANGE_ROW_MAPPER).stream().findFirst();
+    }
+
+    @Override
+    public int deleteChangesBefore(Instant before) {
+        return jdbcTemplate.update("DELETE FROM post_change WHERE changed_at < ?", Timestamp.from(before));
+    }
+
+    @Override
+    @Transactional
+    public Optional<Post> update(int id, Integer expectedVersion, String title, String body) {
+        boolean changes = title != null || body != null;
+        List<Object> args = new ArrayList<>(4);
+        StringBuilder sql = new StringBuilder();
+        if (!changes) {
+            // Nothing to change, so don't bump the version either
+            sql.append("SELECT id, user_id, title, body, version FROM post WHERE id = ?");
+        } else {
+            sql.append("UPDATE post SET ");
+            if (title != null) {
+                sql.append("title = ?, ");
+                args.add(title);
+            }
+            if (body != null) {
+                sql.append("body = ?, ");
+                args.add(body);
+            }
+            sql.append("version = version + 1 WHERE id = ?");
+        }
+        args.add(id);
+        if (expectedVersion != null) {
+            sql.append(" AND version = ?");
+            args.add(expectedVersion);
+        }
+        if (changes) {
+            sql.append(" RETURNING id, user_id, title, body, version");
+        }
+        Optional<Post> updated = jdbcTemplate.query(sql.toString(), POST_ROW_MAPPER, args.toArray()).stream().findFirst();
+        if (changes && updated.isPresent()) {
+            postCache.putAfterCommit(updated.get());
+            postPageCache.invalidateAfterCommit();
+            postHotStore.putAfterCommit(updated.get());
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteIfVersion(int id, int version) {
+        boolean deleted = jdbcTemplate.update("DELETE FROM post WHERE id = ? AND version = ?", id, version) == 1;
+        if (deleted) {
+            postCache.evictAfterCommit(id);
+            postPageCache.invalidateAfterCommit();
+            postHotStore.evictAfterCommit(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public int[] updateAll(List<PostUpdate> updates) {
+        if (updates.isEmpty()) {
+            return new int[0];
+        }
+        // GREATEST: an unchecked write never moves a row's version backwards or onto one it already had
+        int[] counts = jdbcTemplate.batchUpdate("""
+                        UPDATE post SET title = ?, body = ?, version = GREATEST(version + 1, ?)
+                        WHERE id = ? AND (?::int IS NULL OR version = ?)""",
+                updates,
+                updates.size(),
+                (ps, update) -> {
+                    ps.setString(1, update.post().title());
+                    ps.setString(2, update.post().body());
+                    ps.setInt(3, update.post().version());
+                    ps.setInt(4, update.post().id());
+                    ps.setObject(5, update.expectedVersion(), Types.INTEGER);
+                    ps.setObject(6, update.expectedVersion(), Types.INTEGER);
+                })[0];
+        // The batch doesn't return the new rows, so cached copies are dropped rather than replaced
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                postCache.evictAfterCommit(updates.get(i).post().id());
+                postHotStore.evictAfterCommit(updates.get(i).post().id());
+            }
+        }
+        postPageCache.invalidateAfterCommit();
+        return counts;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PostSearchHit> search(String query, float afterRank, int afterId, int limit, boolean highlight) {
+        // The GIN index finds the matches; ts_headline is expensive, so it only runs on the rows of this page
+        return jdbcTemplate.query("""
+                        WITH query AS (SELECT websearch_to_tsquery('english', ?) AS q),
+                        ranked AS (
+                            SELECT post.id, post.user_id, post.title, post.body, post.version,
+                                   ts_rank(post.search_vector, query.q) AS rank
+                            FROM post, query
+                            WHERE post.search_vector @@ query.q
+                        ),
+                        page AS (
+                            SELECT * FROM ranked
+                            WHERE rank < ? OR (rank = ? AND id > ?)
+                            ORDER BY rank DESC, id
+                            LIMIT ?
+                        )
+                        SELECT page.*,
+                               CASE WHEN ? THEN ts_headline('english', page.body, query.q,
+                                   'MaxFragments=2, MinWords=5, MaxWords=20, StartSel=<b>, StopSel=</b>') END AS snippet
+                        FROM page, query
+                        ORDER BY page.rank DESC, page.id""",
+                (rs, rowNum) -> new PostSearchHit(POST_ROW_MAPPER.mapRow(rs, rowNum), rs.getFloat("rank"), rs.getString("snippet")),
+                query, afterRank, afterRank, afterId, limit, highlight);
+    }
+}
@@ -0,0 +1,109 @@
+package dev.william.willson.post;
+
+import dev.william.willson.globalException.DatabaseBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Caps concurrent PostRepository calls at the connection pool size. With virtual threads there is
+// no Tomcat thread limit in front of the database any more, so callers queue here (FIFO) instead
+// of piling up inside Hikari, and give up with a 503 after posts.db.acquire-timeout.
+// Whole-table streams hold their connection for as long as the client takes to download, so they queue for
+// posts.db.max-streams permits of their own instead of taking call permits away from everyone else.
+// The pool needs room for both plus posts.partition-scan.threads, whose workers open connections of their own.
+// Ordered between PostRepositoryMetrics and PostRepositoryCoalescer, which must wrap it from outside.
+@Component
+public class PostRepositoryLimiter implements BeanPostProcessor, MethodInterceptor, MeterBinder, Ordered {
+
+    private static final Set<String> STREAMS = Set.of("streamAll", "copyOut");
+
+    private final Semaphore permits;
+    private final Semaphore streamPermits;
+    private final int maxConcurrency;
+    private final int maxStreams;
+    private final long acquireTimeoutNanos;
+
+    private volatile Timer waitTimer;
+    private volatile Counter rejectedCounter;
+
+    public PostRepositoryLimiter(@Value("${posts.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+                                 @Value("${posts.db.max-streams:2}") int maxStreams,
+                                 @Value("${posts.db.acquire-timeout:5s}") Duration acquireTimeout) {
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.streamPermits = new Semaphore(maxStreams, true);
+        this.maxConcurrency = maxConcurrency;
+        this.maxStreams = maxStreams;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof PostRepository)) {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(bean);
+        proxyFactory.addInterface(PostRepository.class);
+        proxyFactory.addAdvice(this);
+        return proxyFactory.getProxy(getClass().getClassLoader());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Semaphore permits = STREAMS.contains(invocation.getMethod().getName()) ? streamPermits : this.permits;
+        long start = System.nanoTime();
+        if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            if (rejectedCounter != null) {
+                rejectedCounter.increment();
+            }
+            throw new DatabaseBusyException("Database is busy, try again later");
+        }
+        try {
+            if (waitTimer != null) {
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            return invocation.proceed();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("posts.db.permits.waiting", permits, Semaphore::getQueueLength)
+                .description("Callers queued for a database permit")
+                .register(registry);
+        Gauge.builder("posts.db.permits.active", permits, p -> maxConcurrency - p.availablePermits())
+                .description("Database permits in use")
+                .register(registry);
+        Gauge.builder("posts.db.streams.active", streamPermits, p -> maxStreams - p.availablePermits())
+                .description("Whole-table streams and exports reading from the database")
+                .register(registry);
+        waitTimer = Timer.builder("posts.db.permits.wait")
+                .description("Time spent waiting for a database permit")
+                .publishPercentileHistogram()
+                .register(registry);
+        rejectedCounter = Counter.builder("posts.db.permits.rejected")
+                .description("Calls that timed out waiting for a database permit")
+                .register(registry);
+    }
+}
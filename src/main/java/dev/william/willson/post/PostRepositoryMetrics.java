@@ -0,0 +1,119 @@
+package dev.william.willson.post;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Times every PostRepository call as posts.repository{method=...} and logs the ones slower than
+// posts.metrics.slow-query-threshold. Timers are looked up by Method, so a call allocates nothing.
+// Ordered so it runs before PostRepositoryLimiter wraps the repository: permit waits are timed separately.
+@Component
+class PostRepositoryMetrics implements BeanPostProcessor, MethodInterceptor, MeterBinder, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(PostRepositoryMetrics.class);
+
+    private final boolean enabled;
+    private final long slowThresholdNanos;
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    PostRepositoryMetrics(@Value("${posts.metrics.repository.enabled:true}") boolean enabled,
+                          @Value("${posts.metrics.slow-query-threshold:200ms}") Duration slowThreshold) {
+        this.enabled = enabled;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || !(bean instanceof PostRepository)) {
+            return bean;
+        }
+        // Joining the Spring Data proxy's own chain avoids a second proxy and its per-call MethodInvocation
+        if (bean instanceof Advised advised && !advised.isFrozen()) {
+            advised.addAdvice(0, this);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(bean);
+        proxyFactory.addInterface(PostRepository.class);
+        proxyFactory.addAdvice(this);
+        return proxyFactory.getProxy(getClass().getClassLoader());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            Timer timer = timer(invocation.getMethod());
+            if (timer != null) {
+                timer.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+            if (elapsed >= slowThresholdNanos) {
+                log.warn("Slow repository call {}({}) took {} ms",
+                        invocation.getMethod().getName(), describe(invocation.getArguments()), elapsed / 1_000_000);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (Method method : PostRepository.class.getMethods()) {
+            timer(method);
+        }
+    }
+
+    // Registered up front in bindTo; only a method seen for the first time pays for the registration
+    private Timer timer(Method method) {
+        Timer timer = timers.get(method);
+        if (timer != null || registry == null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(method, m -> Timer.builder("posts.repository")
+                .description("PostRepository calls")
+                .tag("method", m.getName())
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    // Bulk inserts carry thousands of posts, so collections are logged by size only
+    private static String describe(Object[] arguments) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Object argument : arguments) {
+            if (argument instanceof Collection<?> collection) {
+                joiner.add(collection.size() + " items");
+            } else {
+                String text = String.valueOf(argument);
+                joiner.add(text.length() > 100 ? text.substring(0, 100) + "..." : text);
+            }
+        }
+        return joiner.toString();
+    }
+}
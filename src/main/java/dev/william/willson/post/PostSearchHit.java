@@ -0,0 +1,14 @@
+package dev.william.willson.post;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+// A post matching GET /api/posts/search; snippet is only filled in when highlighting was requested
+public record PostSearchHit(
+        @JsonUnwrapped
+        Post post,
+        float rank,
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String snippet
+) {
+}
@@ -0,0 +1,9 @@
+package dev.william.willson.post;
+
+// The list-view columns of a post; body is left out so pages can be served from the (user_id, id) index alone
+public record PostSummary(
+        Integer id,
+        String title,
+        Integer version
+) {
+}
@@ -0,0 +1,9 @@
+package dev.william.willson.post;
+
+// One row of PostRepository.updateAll: post's title and body, and post.version() as the version the row moves to.
+// The row is only written while it is still at expectedVersion; null skips the check.
+public record PostUpdate(
+        Post post,
+        Integer expectedVersion
+) {
+}
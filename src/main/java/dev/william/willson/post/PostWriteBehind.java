@@ -0,0 +1,280 @@
+package dev.william.willson.post;
+
+import dev.william.willson.globalException.DatabaseBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Opt-in write-behind for PUT /api/posts/{id} with Prefer: respond-async. Updates wait in memory, one entry per
+// post: a newer update to a queued post replaces it, so a post written many times between flushes costs a
+// single UPDATE. Each update still gets a version of its own, and the flush moves the row straight to the last one.
+// A worker writes the queue in batches every posts.write-behind.flush-interval.
+// Queued updates are lost if the process dies before they are flushed; a normal shutdown flushes them.
+@Component
+public class PostWriteBehind implements SmartLifecycle, MeterBinder {
+
+    public enum Overflow { SYNC, REJECT }
+
+    // post.version() is the pending version the post will have once flushed; expectedVersion is the version the
+    // flush checks (null: last write wins)
+    private record PendingWrite(Post post, Integer expectedVersion, long enqueuedAt) {
+
+        int pendingVersion() {
+            return post.version();
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PostWriteBehind.class);
+
+    private final PostRepository postRepository;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Overflow overflow;
+    private final Map<Integer, PendingWrite> pending = new ConcurrentHashMap<>();
+    // Taken off the queue but not committed yet; later updates chain onto their pending version
+    private final Map<Integer, PendingWrite> inFlight = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService worker;
+    private volatile Counter coalescedCounter;
+    private volatile Counter rejectedCounter;
+    private volatile Counter conflictCounter;
+    private volatile Counter failureCounter;
+    private volatile Timer flushTimer;
+    private volatile Timer lagTimer;
+    private volatile DistributionSummary batchSummary;
+
+    public PostWriteBehind(PostRepository postRepository,
+                           @Value("${posts.write-behind.enabled:false}") boolean enabled,
+                           @Value("${posts.write-behind.capacity:10000}") int capacity,
+                           @Value("${posts.write-behind.batch-size:500}") int batchSize,
+                           @Value("${posts.write-behind.flush-interval:100ms}") Duration flushInterval,
+                           @Value("${posts.write-behind.overflow:sync}") Overflow overflow) {
+        this.postRepository = postRepository;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflow = overflow;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Queues new title and body for current, which the caller has just read. expectedVersion may be the stored
+    // version or the pending version a previous 202 handed out. Returns the post as it will read once flushed,
+    // or null when the queue is full and overflow=sync leaves the write to the caller.
+    public Post enqueue(Post current, Integer expectedVersion, String title, String body) {
+        Integer id = current.id();
+        boolean[] full = new boolean[1];
+        PendingWrite queued = pending.compute(id, (key, previous) -> {
+            if (previous != null) {
+                if (expectedVersion != null && expectedVersion != previous.pendingVersion()) {
+                    throw new OptimisticLockingFailureException("Post " + id + " is queued to become version " + previous.pendingVersion());
+                }
+                if (coalescedCounter != null) {
+                    coalescedCounter.increment();
+                }
+                // A new version even though it replaces the queued write, so two bodies never share an ETag
+                Post post = new Post(id, previous.post().userId(), title, body, previous.pendingVersion() + 1);
+                return new PendingWrite(post, previous.expectedVersion(), previous.enqueuedAt());
+            }
+            PendingWrite flushing = inFlight.get(id);
+            int version = flushing != null ? flushing.pendingVersion() : current.version() == null ? 0 : current.version();
+            if (expectedVersion != null && expectedVersion != version) {
+                throw new OptimisticLockingFailureException("Post " + id + " is no longer at version " + expectedVersion);
+            }
+            if (pending.size() >= capacity) {
+                full[0] = true;
+                return null;
+            }
+            // Chained onto an in-flight write, the check is against the version that write commits. If it fails,
+            // write() drops this one with it; if its batch is put back, this one takes its place.
+            return new PendingWrite(new Post(id, current.userId(), title, body, version + 1), expectedVersion, System.nanoTime());
+        });
+        if (full[0]) {
+            if (rejectedCounter != null) {
+                rejectedCounter.increment();
+            }
+            if (overflow == Overflow.REJECT) {
+                throw new DatabaseBusyException("Write queue is full, try again later");
+            }
+            return null;
+        }
+        return queued.post();
+    }
+
+    // Writes everything queued so far, batchSize posts per transaction; the worker calls this every flush-interval
+    public void flush() {
+        while (!pending.isEmpty()) {
+            List<PendingWrite> batch = new ArrayList<>(batchSize);
+            Iterator<Integer> ids = pending.keySet().iterator();
+            while (ids.hasNext() && batch.size() < batchSize) {
+                // Moved under the entry's lock, so enqueue always finds it in one map or the other
+                pending.computeIfPresent(ids.next(), (id, write) -> {
+                    inFlight.put(id, write);
+                    batch.add(write);
+                    return null;
+                });
+            }
+            if (!write(batch)) {
+                // Leave the rest for the next flush rather than spinning while the database is down
+                return;
+            }
+        }
+    }
+
+    private boolean write(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        try {
+            int[] counts = postRepository.updateAll(batch.stream()
+                    .map(write -> new PostUpdate(write.post(), write.expectedVersion()))
+                    .toList());
+            long now = System.nanoTime();
+            for (int i = 0; i < counts.length; i++) {
+                PendingWrite write = batch.get(i);
+                if (counts[i] == 0) {
+                    conflict(write);
+                }
+                if (lagTimer != null) {
+                    lagTimer.record(now - write.enqueuedAt(), TimeUnit.NANOSECONDS);
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Put the batch back for the next flush. A write chained onto one of them meanwhile already includes it,
+            // so it goes out in its place, under its check.
+            if (failureCounter != null) {
+                failureCounter.increment();
+            }
+            log.error("Flushing {} queued post updates failed, retrying in {}", batch.size(), flushInterval, e);
+            for (PendingWrite write : batch) {
+                pending.compute(write.post().id(), (id, chained) -> {
+                    inFlight.remove(id, write);
+                    return chained == null ? write : new PendingWrite(chained.post(), write.expectedVersion(), write.enqueuedAt());
+                });
+            }
+            return false;
+        } finally {
+            for (PendingWrite write : batch) {
+                inFlight.remove(write.post().id(), write);
+            }
+            if (flushTimer != null) {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                batchSummary.record(batch.size());
+            }
+        }
+    }
+
+    // Writes chained onto this one were checked against a version that never got committed, so they go too.
+    // Done under the entry's lock, so a write enqueued meanwhile can't chain onto this one any more.
+    private void conflict(PendingWrite write) {
+        boolean[] chained = new boolean[1];
+        pending.compute(write.post().id(), (id, queued) -> {
+            inFlight.remove(id, write);
+            chained[0] = queued != null && queued.expectedVersion() != null && queued.expectedVersion() == write.pendingVersion();
+            return chained[0] ? null : queued;
+        });
+        if (conflictCounter != null) {
+            conflictCounter.increment(chained[0] ? 2 : 1);
+        }
+        log.warn("Dropped queued update of post {}{}: it was deleted or is no longer at version {}",
+                write.post().id(), chained[0] ? " and the update queued after it" : "", write.expectedVersion());
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("posts-write-behind").daemon().factory());
+        worker.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toNanos(), flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // Writes whatever is left once the web server has stopped taking requests
+    @Override
+    public void stop() {
+        ScheduledExecutorService running = worker;
+        if (running == null) {
+            return;
+        }
+        worker = null;
+        running.shutdown();
+        try {
+            running.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return worker != null;
+    }
+
+    // Stopped after the web server (DEFAULT_PHASE - 2048), so no request can queue behind the last flush
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush failed", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("posts.write-behind.queue.depth", pending, Map::size)
+                .description("Posts with an update waiting to be flushed")
+                .register(registry);
+        coalescedCounter = Counter.builder("posts.write-behind.coalesced")
+                .description("Updates merged into one already queued for the same post")
+                .register(registry);
+        rejectedCounter = Counter.builder("posts.write-behind.overflow")
+                .description("Updates that found the queue full")
+                .register(registry);
+        conflictCounter = Counter.builder("posts.write-behind.conflicts")
+                .description("Queued updates dropped because the post was deleted or changed underneath")
+                .register(registry);
+        failureCounter = Counter.builder("posts.write-behind.flush.failures")
+                .description("Flush batches that failed and were queued again")
+                .register(registry);
+        batchSummary = DistributionSummary.builder("posts.write-behind.flush.size")
+                .description("Posts written per flush batch")
+                .register(registry);
+        flushTimer = Timer.builder("posts.write-behind.flush")
+                .description("Time to write one flush batch")
+                .publishPercentileHistogram()
+                .register(registry);
+        lagTimer = Timer.builder("posts.write-behind.lag")
+                .description("Time from queueing an update to flushing it")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,63 @@
+package dev.william.willson.post;
+
+import dev.william.willson.globalException.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/users")
+public class UserPostController {
+
+    private final PostRepository postRepository;
+    private final int maxPageSize;
+
+    // Constructor injection
+    UserPostController(PostRepository postRepository, @Value("${posts.page.max-limit:1000}") int maxPageSize) {
+        this.postRepository = postRepository;
+        this.maxPageSize = maxPageSize;
+    }
+
+    // Keyset pages of one user's posts; view=summary leaves out the body (id, title, version only)
+    @GetMapping("/{userId}/posts")
+    public ResponseEntity<List<?>> findPostsByUser(@PathVariable Integer userId,
+                                                   @RequestParam(defaultValue = "0") int after,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(defaultValue = "full") String view) {
+        int pageSize = Math.clamp(limit == null ? maxPageSize : limit, 1, maxPageSize);
+        List<?> page;
+        int lastId;
+        switch (view) {
+            case "full" -> {
+                List<Post> posts = postRepository.findByUserIdAndIdGreaterThanOrderById(userId, after, Limit.of(pageSize));
+                page = posts;
+                lastId = posts.isEmpty() ? after : posts.getLast().id();
+            }
+            case "summary" -> {
+                List<PostSummary> summaries = postRepository.findSummariesByUserId(userId, after, pageSize);
+                page = summaries;
+                lastId = summaries.isEmpty() ? after : summaries.getLast().id();
+            }
+            default -> throw new BadRequestException("Unknown view: " + view + " (expected full or summary)");
+        }
+        if (page.size() < pageSize) {
+            return ResponseEntity.ok(page);
+        }
+        String next = "</api/users/" + userId + "/posts?after=" + lastId + "&limit=" + pageSize + "&view=" + view + ">; rel=\"next\"";
+        return ResponseEntity.ok().header(HttpHeaders.LINK, next).body(page);
+    }
+
+    @GetMapping("/{userId}/posts/count")
+    public UserPostCount countPostsOfUser(@PathVariable Integer userId) {
+        return new UserPostCount(userId, postRepository.countPostsOfUser(userId));
+    }
+
+    @GetMapping("/post-counts")
+    public List<UserPostCount> countPostsByUser() {
+        return postRepository.countPostsByUser();
+    }
+}
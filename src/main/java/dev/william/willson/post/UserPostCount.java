@@ -0,0 +1,7 @@
+package dev.william.willson.post;
+
+public record UserPostCount(
+        Integer userId,
+        long postCount
+) {
+}
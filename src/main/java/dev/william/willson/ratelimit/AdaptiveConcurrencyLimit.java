@@ -0,0 +1,89 @@
+package dev.william.willson.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A concurrency limit that finds its own level from latency, along the lines of the gradient limiters in Netflix's
+// concurrency-limits. It keeps a fast and a slow moving average of request latency. When the fast one rises above the
+// slow one by more than tolerance, requests are queueing somewhere and the limit shrinks in proportion. Otherwise it
+// grows by about sqrt(limit) per sample. A request that was turned away downstream (a 503) cuts it by a tenth.
+// Admitting a request is a compare-and-set on the in-flight count; only samples take the lock.
+public final class AdaptiveConcurrencyLimit {
+
+    private static final double FAST_WEIGHT = 2.0 / (10 + 1);
+    private static final double SLOW_WEIGHT = 2.0 / (500 + 1);
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private double fastLatency;
+    private double slowLatency;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    // Returns the number of requests in flight including this one, or 0 when the limit is reached
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // Latency of a request admitted with inFlightAtStart requests in flight
+    public synchronized void onSample(long latencyNanos, int inFlightAtStart) {
+        if (slowLatency == 0) {
+            fastLatency = slowLatency = latencyNanos;
+        }
+        fastLatency += (latencyNanos - fastLatency) * FAST_WEIGHT;
+        slowLatency += (latencyNanos - slowLatency) * SLOW_WEIGHT;
+        // After a long spike the slow average has crept up; let it fall back rather than tolerate the spike forever
+        if (slowLatency > 2 * fastLatency) {
+            slowLatency *= 0.95;
+        }
+        // Well under the limit, latency says nothing about whether more concurrency would hurt
+        if (inFlightAtStart < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.clamp(tolerance * slowLatency / fastLatency, 0.5, 1.0);
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        update(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    // A request that was shed further down, e.g. by the database permits
+    public synchronized void onDropped() {
+        update(estimatedLimit * 0.9);
+    }
+
+    private void update(double newLimit) {
+        estimatedLimit = Math.clamp(newLimit, minLimit, maxLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,39 @@
+package dev.william.willson.ratelimit;
+
+import java.util.Locale;
+
+// Endpoints that cost about the same, each with its own rate limits and concurrency limit, so a flood of bulk
+// imports or searches can't crowd out the cheap, mostly cached reads
+public enum EndpointGroup {
+
+    READ,
+    SEARCH,
+    WRITE,
+    BULK,
+    // Long-lived responses: exports, NDJSON streams and the change feed. Rate limited, but as they hold no
+    // request thread while streaming they are left out of the concurrency limit.
+    STREAM;
+
+    public static EndpointGroup of(String method, String path, String accept) {
+        if (path.startsWith("/api/posts/export") || path.startsWith("/api/posts/changes")
+                || path.equals("/api/posts") && accept != null && accept.contains("application/x-ndjson")) {
+            return STREAM;
+        }
+        if (path.startsWith("/api/posts/search")) {
+            return SEARCH;
+        }
+        if (path.startsWith("/api/posts/bulk")) {
+            return BULK;
+        }
+        // A POST, but only reads
+        if (path.startsWith("/api/posts/batch-get")) {
+            return READ;
+        }
+        return method.equals("GET") || method.equals("HEAD") ? READ : WRITE;
+    }
+
+    // Name in properties and metric tags
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,186 @@
+package dev.william.willson.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.william.willson.globalException.ServerOverloadedException;
+import dev.william.willson.globalException.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Turns /api requests away early instead of letting them queue up in Tomcat. First a token bucket per client and
+// endpoint group (posts.rate-limit.<group>.rate and .burst; 0 means unlimited) answers 429. Then an adaptive
+// concurrency limit per group answers 503 once latency shows requests are queueing. Both carry Retry-After and
+// go through GlobalExceptionHandler like any other error.
+// Clients are told apart by remote address. The client header is only used when posts.rate-limit.trust-client-header
+// says a gateway sets it: a client that picks its own id could take a new one per request, skip its limit and push
+// everyone else's buckets out of the cache.
+// Only in a servlet application: contexts without the web layer (benchmarks, batch runs) have no resolver to hand to.
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class LoadSheddingFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private record Limits(Cache<String, TokenBucket> buckets, double rate, int burst, AdaptiveConcurrencyLimit concurrency) {
+    }
+
+    private final HandlerExceptionResolver handlerExceptionResolver;
+    private final boolean enabled;
+    private final String clientHeader;
+    private final boolean trustClientHeader;
+    private final Map<EndpointGroup, Limits> limits = new EnumMap<>(EndpointGroup.class);
+
+    private volatile Map<EndpointGroup, Counter> admittedCounters = Map.of();
+    private volatile Map<EndpointGroup, Counter> rateLimitedCounters = Map.of();
+    private volatile Map<EndpointGroup, Counter> shedCounters = Map.of();
+
+    public LoadSheddingFilter(@Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver,
+                              Environment environment,
+                              @Value("${posts.load-shedding.enabled:true}") boolean enabled,
+                              @Value("${posts.rate-limit.client-header:X-Client-Id}") String clientHeader,
+                              @Value("${posts.rate-limit.trust-client-header:false}") boolean trustClientHeader,
+                              @Value("${posts.concurrency-limit.initial:100}") int initialLimit,
+                              @Value("${posts.concurrency-limit.min:10}") int minLimit,
+                              @Value("${posts.concurrency-limit.max:1000}") int maxLimit,
+                              @Value("${posts.concurrency-limit.tolerance:2.0}") double tolerance) {
+        this.handlerExceptionResolver = handlerExceptionResolver;
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.trustClientHeader = trustClientHeader;
+        for (EndpointGroup group : EndpointGroup.values()) {
+            // One property pair per group, hence the lookups rather than a @Value each
+            double rate = environment.getProperty("posts.rate-limit." + group.key() + ".rate", Double.class, 0.0);
+            int burst = environment.getProperty("posts.rate-limit." + group.key() + ".burst", Integer.class, (int) Math.ceil(rate));
+            Cache<String, TokenBucket> buckets = null;
+            if (rate > 0) {
+                // A bucket left alone for this long has refilled, so dropping it loses nothing
+                Duration refill = Duration.ofNanos((long) (Math.max(1, burst) * 1_000_000_000 / rate));
+                buckets = Caffeine.newBuilder()
+                        .maximumSize(100_000)
+                        .expireAfterAccess(refill.plusSeconds(1))
+                        .build();
+            }
+            AdaptiveConcurrencyLimit concurrency = group == EndpointGroup.STREAM ? null
+                    : new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance);
+            limits.put(group, new Limits(buckets, rate, burst, concurrency));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointGroup group = EndpointGroup.of(request.getMethod(), request.getRequestURI(), request.getHeader(HttpHeaders.ACCEPT));
+        Limits groupLimits = limits.get(group);
+        if (groupLimits.buckets() != null) {
+            String client = trustClientHeader ? request.getHeader(clientHeader) : null;
+            if (client == null) {
+                client = request.getRemoteAddr();
+            }
+            long wait = groupLimits.buckets().get(client, key -> new TokenBucket(groupLimits.rate(), groupLimits.burst(), System.nanoTime()))
+                    .tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                increment(rateLimitedCounters, group);
+                reject(request, response, new TooManyRequestsException("Rate limit of " + groupLimits.rate() + " requests per second exceeded",
+                        Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999))));
+                return;
+            }
+        }
+        AdaptiveConcurrencyLimit concurrency = groupLimits.concurrency();
+        if (concurrency == null) {
+            increment(admittedCounters, group);
+            filterChain.doFilter(request, response);
+            return;
+        }
+        int inFlight = concurrency.tryAcquire();
+        if (inFlight == 0) {
+            increment(shedCounters, group);
+            reject(request, response, new ServerOverloadedException("Too many requests in progress, try again later"));
+            return;
+        }
+        increment(admittedCounters, group);
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            filterChain.doFilter(request, response);
+            completed = true;
+        } finally {
+            concurrency.release();
+            if (response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                concurrency.onDropped();
+            } else if (completed && !request.isAsyncStarted()) {
+                // An async response carries on after this returns, so its time so far says little
+                concurrency.onSample(System.nanoTime() - start, inFlight);
+            }
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, RuntimeException e) {
+        handlerExceptionResolver.resolveException(request, response, null, e);
+    }
+
+    private static void increment(Map<EndpointGroup, Counter> counters, EndpointGroup group) {
+        Counter counter = counters.get(group);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Map<EndpointGroup, Counter> admitted = new EnumMap<>(EndpointGroup.class);
+        Map<EndpointGroup, Counter> rateLimited = new EnumMap<>(EndpointGroup.class);
+        Map<EndpointGroup, Counter> shed = new EnumMap<>(EndpointGroup.class);
+        for (EndpointGroup group : EndpointGroup.values()) {
+            admitted.put(group, Counter.builder("posts.requests.admitted")
+                    .description("Requests let through the rate and concurrency limits")
+                    .tag("group", group.key())
+                    .register(registry));
+            rateLimited.put(group, Counter.builder("posts.requests.rejected")
+                    .description("Requests turned away by LoadSheddingFilter")
+                    .tags("group", group.key(), "reason", "rate-limit")
+                    .register(registry));
+            shed.put(group, Counter.builder("posts.requests.rejected")
+                    .description("Requests turned away by LoadSheddingFilter")
+                    .tags("group", group.key(), "reason", "concurrency-limit")
+                    .register(registry));
+            AdaptiveConcurrencyLimit concurrency = limits.get(group).concurrency();
+            if (concurrency != null) {
+                Gauge.builder("posts.concurrency-limit.limit", concurrency, AdaptiveConcurrencyLimit::getLimit)
+                        .description("Current adaptive concurrency limit")
+                        .tag("group", group.key())
+                        .register(registry);
+                Gauge.builder("posts.concurrency-limit.in-flight", concurrency, AdaptiveConcurrencyLimit::getInFlight)
+                        .description("Requests in progress against the concurrency limit")
+                        .tag("group", group.key())
+                        .register(registry);
+            }
+        }
+        admittedCounters = admitted;
+        rateLimitedCounters = rateLimited;
+        shedCounters = shed;
+    }
+}
@@ -0,0 +1,35 @@
+package dev.william.willson.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A token bucket held in one AtomicLong, as the generic cell rate algorithm does it: instead of a token count it keeps
+// the time at which the bucket will be full again, so taking a token is a single compare-and-set and refilling
+// costs nothing. Holds up to burst tokens and earns permitsPerSecond of them.
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000 / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    // Takes a token and returns 0, or returns how many nanoseconds until one is available
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long full = fullAt.get();
+            // Compared by difference, which survives System.nanoTime() wrapping around
+            long from = full - nowNanos > 0 ? full : nowNanos;
+            long wait = from - nowNanos - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(full, from + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+-- Post split into 16 hash partitions on id, for tables of tens of millions of rows: each partition is vacuumed,
+-- indexed and scanned on its own. Runs before schema.sql (see application-partitioned.properties), whose
+-- CREATE TABLE IF NOT EXISTS then finds the table in place and adds the columns, indexes and triggers to every
+-- partition. Only a fresh database is partitioned this way; an existing plain Post table is left as it is.
+-- Partitioned on id alone: a unique key must contain the partition key, and id has to stay unique on its own.
+CREATE TABLE IF NOT EXISTS Post(
+    id INT NOT NULL,
+    user_id INT NOT NULL,
+    title varchar(255) NOT NULL,
+    body text NOT NULL,
+    version int,
+    PRIMARY KEY (id)
+) PARTITION BY HASH (id);
+
+DO '
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = ''post''::regclass) = ''p'' THEN
+        FOR i IN 0..15 LOOP
+            EXECUTE format(''CREATE TABLE IF NOT EXISTS post_p%s PARTITION OF Post FOR VALUES WITH (MODULUS 16, REMAINDER %s)'', i, i);
+        END LOOP;
+    END IF;
+END';
@@ -0,0 +1,119 @@
+package dev.william.willson.datasource;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostCache;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostPartitionScanner;
+import dev.william.willson.post.PostRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The "replica" is a second database in the same container holding different titles, so every read shows
+// which side answered it. A zero read-your-writes window keeps writes by other tests from pinning refills.
+// The routing post-processor is a static bean, so its placeholders need the configurer the full application has.
+@Testcontainers
+@DataJdbcTest(properties = "posts.datasource.read-your-writes-window=0s")
+@ImportAutoConfiguration(PropertyPlaceholderAutoConfiguration.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReplicaDataSourceConfiguration.class, PostCache.class, PostPageCache.class, PostHotStore.class,
+        PostPartitionScanner.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ReplicaReadRoutingTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16.0");
+
+    @DynamicPropertySource
+    static void replicaUrls(DynamicPropertyRegistry registry) {
+        registry.add("posts.datasource.replica-urls", ReplicaReadRoutingTest::createReplica);
+    }
+
+    // The property is read more than once while the context starts
+    private static String replicaUrl;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static synchronized String createReplica() {
+        if (replicaUrl != null) {
+            return replicaUrl;
+        }
+        String url = postgres.getJdbcUrl().replace("/" + postgres.getDatabaseName(), "/replica");
+        try (Connection connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE replica");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        try (Connection connection = DriverManager.getConnection(url, postgres.getUsername(), postgres.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE post (id INT PRIMARY KEY, user_id INT, title VARCHAR(255), body TEXT, version INT)");
+            statement.execute("INSERT INTO post VALUES (1, 1, 'Replica 1', 'Body', 0), (2, 1, 'Replica 2', 'Body', 0), (3, 1, 'Replica 3', 'Body', 0)");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        replicaUrl = url;
+        return url;
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO post (id, user_id, title, body, version) VALUES (1, 1, 'Primary 1', 'Body', 0), (2, 1, 'Primary 2', 'Body', 0), (3, 1, 'Primary 3', 'Body', 0)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadRouting.clear();
+        jdbcTemplate.update("TRUNCATE post, post_user_stats, post_change");
+    }
+
+    @Test
+    public void ReplicaReadRoutingTest_ListAndFindByIdMiss_ReadFromReplica() throws Exception {
+        assertThat(postRepository.findByIdGreaterThanOrderById(0, Limit.of(10))).extracting(Post::title)
+                .containsExactly("Replica 1", "Replica 2", "Replica 3");
+        assertThat(postRepository.findAll()).extracting(Post::title).containsExactly("Replica 1", "Replica 2", "Replica 3");
+        assertThat(postRepository.findById(1)).get().extracting(Post::title).isEqualTo("Replica 1");
+        // Batch-get misses too; post 1 is a cache hit by now
+        assertThat(postRepository.findAllByIds(List.of(1, 3)).values()).extracting(Post::title)
+                .containsExactlyInAnyOrder("Replica 1", "Replica 3");
+    }
+
+    @Test
+    public void ReplicaReadRoutingTest_PinnedToPrimary_ReadsFromPrimary() throws Exception {
+        ReadRouting.pinToPrimary();
+
+        assertThat(postRepository.findByIdGreaterThanOrderById(0, Limit.of(10))).extracting(Post::title)
+                .containsExactly("Primary 1", "Primary 2", "Primary 3");
+        assertThat(postRepository.findById(2)).get().extracting(Post::title).isEqualTo("Primary 2");
+    }
+}
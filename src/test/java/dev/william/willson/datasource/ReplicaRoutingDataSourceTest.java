@@ -0,0 +1,88 @@
+package dev.william.willson.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection firstReplicaConnection = mock(Connection.class);
+    private final Connection secondReplicaConnection = mock(Connection.class);
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource firstReplica = mock(DataSource.class);
+    private final DataSource secondReplica = mock(DataSource.class);
+
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(firstReplica.getConnection()).thenReturn(firstReplicaConnection);
+        when(secondReplica.getConnection()).thenReturn(secondReplicaConnection);
+        dataSource = new ReplicaRoutingDataSource(primary, List.of(firstReplica, secondReplica), Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReadRouting.clear();
+    }
+
+    @Test
+    public void ReplicaRoutingDataSource_OutsideReadOnlyTransaction_UsesPrimary() throws Exception {
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        verifyNoInteractions(firstReplica, secondReplica);
+    }
+
+    @Test
+    public void ReplicaRoutingDataSource_ReadOnlyTransactions_AlternateBetweenReplicas() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(List.of(dataSource.getConnection(), dataSource.getConnection(), dataSource.getConnection()))
+                .containsExactly(firstReplicaConnection, secondReplicaConnection, firstReplicaConnection);
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    public void ReplicaRoutingDataSource_ReplicaDown_SkipsItUntilRetry() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(firstReplica.getConnection()).thenThrow(new SQLTransientConnectionException("Connection refused"));
+
+        assertThat(List.of(dataSource.getConnection(), dataSource.getConnection(), dataSource.getConnection()))
+                .containsOnly(secondReplicaConnection);
+        verify(firstReplica, times(1)).getConnection();
+        assertThat(dataSource.healthyReplicas()).isEqualTo(1);
+    }
+
+    @Test
+    public void ReplicaRoutingDataSource_AllReplicasDown_FallsBackToPrimary() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(firstReplica.getConnection()).thenThrow(new SQLTransientConnectionException("Connection refused"));
+        when(secondReplica.getConnection()).thenThrow(new SQLTransientConnectionException("Connection refused"));
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.healthyReplicas()).isZero();
+    }
+
+    @Test
+    public void ReplicaRoutingDataSource_PinnedToPrimary_ReadsFromPrimary() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadRouting.pinToPrimary();
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        verifyNoInteractions(firstReplica, secondReplica);
+    }
+}
@@ -0,0 +1,145 @@
+package dev.william.willson.post.cache;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostCache;
+import dev.william.willson.post.PostChange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostCacheTest {
+
+    private PostCache postCache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() {
+        postCache = new PostCache(100, Duration.ofMinutes(1));
+        loads.set(0);
+    }
+
+    private Optional<Post> load(Integer id) {
+        loads.incrementAndGet();
+        return Optional.of(new Post(id, 1, "Loaded", "From the database.", 0));
+    }
+
+    @Test
+    public void PostCache_GetTwice_LoadsOnce() throws Exception {
+        postCache.get(1, this::load);
+        Optional<Post> post = postCache.get(1, this::load);
+
+        assertThat(post).isPresent();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostCache_GetMissingPost_IsNotCached() throws Exception {
+        postCache.get(1, id -> { loads.incrementAndGet(); return Optional.empty(); });
+        Optional<Post> post = postCache.get(1, id -> { loads.incrementAndGet(); return Optional.empty(); });
+
+        assertThat(post).isEmpty();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void PostCache_PutOlderVersion_KeepsNewerVersion() throws Exception {
+        postCache.put(new Post(1, 1, "Newer", "Version two.", 2));
+        postCache.put(new Post(1, 1, "Older", "Version one.", 1));
+
+        Optional<Post> post = postCache.get(1, this::load);
+        assertThat(post).map(Post::version).contains(2);
+        assertThat(loads.get()).isZero();
+    }
+
+    @Test
+    public void PostCache_Evict_ReloadsOnNextGet() throws Exception {
+        postCache.put(new Post(1, 1, "Cached", "Version one.", 1));
+        postCache.evict(1);
+
+        Optional<Post> post = postCache.get(1, this::load);
+        assertThat(post).map(Post::title).contains("Loaded");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostCache_EvictStale_DropsOnlyOlderVersionsAndDeletes() throws Exception {
+        postCache.put(new Post(1, 1, "Cached", "Version two.", 2));
+        postCache.put(new Post(2, 1, "Cached", "Version one.", 1));
+        postCache.put(new Post(3, 1, "Cached", "Version five.", 5));
+
+        postCache.evictStale(new PostChange(1, 100, 1, 2, "updated"));
+        postCache.evictStale(new PostChange(2, 101, 2, 2, "updated"));
+        postCache.evictStale(new PostChange(3, 102, 3, 5, "deleted"));
+
+        assertThat(postCache.get(1, this::load)).map(Post::title).contains("Cached");
+        assertThat(postCache.get(2, this::load)).map(Post::title).contains("Loaded");
+        assertThat(postCache.get(3, this::load)).map(Post::title).contains("Loaded");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void PostCache_GetAll_LoadsOnlyMissesInOneCall() throws Exception {
+        postCache.put(new Post(1, 1, "Cached", "Version one.", 1));
+        List<Set<Integer>> batches = new ArrayList<>();
+
+        Map<Integer, Post> found = postCache.getAll(List.of(1, 2, 3), ids -> {
+            batches.add(Set.copyOf(ids));
+            return Map.of(2, new Post(2, 1, "Loaded", "From the database.", 0));
+        });
+
+        assertThat(found).containsOnlyKeys(1, 2);
+        assertThat(batches).containsExactly(Set.of(2, 3));
+        // 2 is cached now, 3 had no post and is asked for again
+        postCache.getAll(List.of(2, 3), ids -> {
+            batches.add(Set.copyOf(ids));
+            return Map.of();
+        });
+        assertThat(batches).last().isEqualTo(Set.of(3));
+    }
+
+    @Test
+    public void PostCache_GetWhileGetAllLoads_SharesTheLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<Map<Integer, Post>> batch = executor.submit(() -> postCache.getAll(List.of(1, 2), ids -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return Map.of(1, new Post(1, 1, "Batch", "Loaded once.", 0), 2, new Post(2, 1, "Batch", "Loaded once.", 0));
+            }));
+            loading.await();
+            Future<Optional<Post>> single = executor.submit(() -> postCache.get(2, this::load));
+            Thread.sleep(100);
+            assertThat(single.isDone()).isFalse();
+
+            release.countDown();
+
+            assertThat(batch.get(5, TimeUnit.SECONDS)).containsOnlyKeys(1, 2);
+            assertThat(single.get(5, TimeUnit.SECONDS)).map(Post::title).contains("Batch");
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
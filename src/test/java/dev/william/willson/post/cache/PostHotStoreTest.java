@@ -0,0 +1,149 @@
+package dev.william.willson.post.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostChange;
+import dev.william.willson.post.PostHotStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostHotStoreTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger loads = new AtomicInteger();
+    private PostHotStore postHotStore;
+
+    @BeforeEach
+    public void setup() {
+        postHotStore = store(true, DataSize.ofMegabytes(128));
+        loads.set(0);
+    }
+
+    private PostHotStore store(boolean enabled, DataSize maximumSize) {
+        return new PostHotStore(new StaticListableBeanFactory().getBeanProvider(ObjectMapper.class), enabled, maximumSize);
+    }
+
+    private Optional<Post> load(Integer id) {
+        loads.incrementAndGet();
+        return Optional.of(new Post(id, 1, "Loaded", "From the database.", 0));
+    }
+
+    private Post read(int id) throws Exception {
+        return objectMapper.readValue(postHotStore.get(id, this::load).orElseThrow().json(), Post.class);
+    }
+
+    @Test
+    public void PostHotStore_GetTwice_LoadsOnceAndReturnsJson() throws Exception {
+        postHotStore.get(1, this::load);
+        PostHotStore.Hit hit = postHotStore.get(1, this::load).orElseThrow();
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(hit.version()).isEqualTo(0);
+        assertThat(hit.json()).isEqualTo(objectMapper.writeValueAsBytes(load(1).orElseThrow()));
+    }
+
+    @Test
+    public void PostHotStore_GetMissingPost_IsNotStored() throws Exception {
+        assertThat(postHotStore.get(1, id -> Optional.empty())).isEmpty();
+
+        assertThat(read(1).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostHotStore_PutOlderVersion_KeepsNewerVersion() throws Exception {
+        postHotStore.put(new Post(1, 1, "Newer", "Version two.", 2));
+        postHotStore.put(new Post(1, 1, "Older", "Version one.", 1));
+
+        assertThat(read(1).title()).isEqualTo("Newer");
+        assertThat(loads.get()).isZero();
+    }
+
+    @Test
+    public void PostHotStore_Evict_LoadsAgain() throws Exception {
+        postHotStore.put(new Post(1, 1, "Stored", "Version one.", 1));
+        postHotStore.evict(1);
+
+        assertThat(read(1).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostHotStore_WriteDuringLoad_DoesNotStoreLoadedPost() throws Exception {
+        // The row was read before the update committed, so it is served once but not kept
+        Optional<PostHotStore.Hit> hit = postHotStore.get(1, id -> {
+            Optional<Post> post = load(id);
+            postHotStore.evict(id);
+            return post;
+        });
+
+        assertThat(hit).isPresent();
+        assertThat(read(1).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void PostHotStore_ChangeFromElsewhere_EvictsOnlyStalePosts() throws Exception {
+        postHotStore.put(new Post(1, 1, "Stored", "Version two.", 2));
+        postHotStore.put(new Post(2, 1, "Stored", "Version two.", 2));
+        postHotStore.put(new Post(3, 1, "Stored", "Version two.", 2));
+
+        // This instance's own write coming back through the feed
+        postHotStore.evictStale(new PostChange(1, 100, 1, 2, "updated"));
+        // Another instance's writes
+        postHotStore.evictStale(new PostChange(2, 101, 2, 3, "updated"));
+        postHotStore.evictStale(new PostChange(3, 102, 3, 2, "deleted"));
+
+        assertThat(read(1).title()).isEqualTo("Stored");
+        assertThat(read(2).title()).isEqualTo("Loaded");
+        assertThat(read(3).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void PostHotStore_ManyPosts_AreAllFound() throws Exception {
+        for (int id = 1; id <= 200_000; id++) {
+            postHotStore.put(new Post(id, id % 100, "Title " + id, "Body.", 0));
+        }
+        postHotStore.evict(100_000);
+
+        assertThat(postHotStore.size()).isEqualTo(199_999);
+        assertThat(read(1).title()).isEqualTo("Title 1");
+        assertThat(read(199_999).title()).isEqualTo("Title 199999");
+        assertThat(read(100_000).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostHotStore_RewritesBeyondMaximumSize_KeepsLatestVersions() throws Exception {
+        // Two 64MB slabs; 400 rewrites of ~1MB posts only fit if superseded versions are reclaimed
+        String body = "x".repeat(1 << 20);
+        for (int version = 0; version < 100; version++) {
+            for (int id = 1; id <= 4; id++) {
+                postHotStore.put(new Post(id, 1, "Version " + version, body, version));
+            }
+        }
+
+        for (int id = 1; id <= 4; id++) {
+            assertThat(read(id).title()).isEqualTo("Version 99");
+        }
+        assertThat(loads.get()).isZero();
+    }
+
+    @Test
+    public void PostHotStore_Disabled_AlwaysLoads() throws Exception {
+        postHotStore = store(false, DataSize.ofMegabytes(128));
+        postHotStore.put(new Post(1, 1, "Stored", "Version one.", 1));
+
+        assertThat(read(1).title()).isEqualTo("Loaded");
+        assertThat(read(1).title()).isEqualTo("Loaded");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,67 @@
+package dev.william.willson.post.cache;
+
+import dev.william.willson.post.PostPageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostPageCacheTest {
+
+    private PostPageCache postPageCache;
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() {
+        postPageCache = new PostPageCache(true, DataSize.ofMegabytes(1), Duration.ofMinutes(1), DataSize.ofBytes(64), Duration.ofSeconds(5));
+        renders.set(0);
+    }
+
+    private PostPageCache.Page render(String json) {
+        renders.incrementAndGet();
+        return new PostPageCache.Page(json.getBytes(StandardCharsets.UTF_8), null, "W/\"1\"", null);
+    }
+
+    @Test
+    public void PostPageCache_GetTwice_RendersOnce() throws Exception {
+        postPageCache.get(0, 10, () -> render("[]"));
+        PostPageCache.Page page = postPageCache.get(0, 10, () -> render("[]"));
+
+        assertThat(new String(page.json(), StandardCharsets.UTF_8)).isEqualTo("[]");
+        assertThat(page.gzip()).isNull();
+        assertThat(renders.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void PostPageCache_GetAfterInvalidate_RendersAgain() throws Exception {
+        postPageCache.get(null, null, () -> render("[]"));
+        postPageCache.invalidate();
+        postPageCache.get(null, null, () -> render("[]"));
+
+        assertThat(renders.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void PostPageCache_InvalidatedWhileRendering_DoesNotStoreStalePage() throws Exception {
+        postPageCache.get(0, 10, () -> {
+            postPageCache.invalidate();
+            return render("[\"stale\"]");
+        });
+        PostPageCache.Page page = postPageCache.get(0, 10, () -> render("[\"fresh\"]"));
+
+        assertThat(new String(page.json(), StandardCharsets.UTF_8)).isEqualTo("[\"fresh\"]");
+    }
+
+    @Test
+    public void PostPageCache_LargePage_IsGzipped() throws Exception {
+        PostPageCache.Page page = postPageCache.get(0, 10, () -> render("[" + "{\"title\":\"Hello\"},".repeat(20) + "{}]"));
+
+        assertThat(page.gzip()).isNotNull();
+        assertThat(page.gzip().length).isLessThan(page.json().length);
+    }
+}
@@ -0,0 +1,198 @@
+package dev.william.willson.post.changes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostCache;
+import dev.william.willson.post.PostChange;
+import dev.william.willson.post.PostChangeFeed;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostChangeFeedTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final PostCache postCache = mock(PostCache.class);
+    private final PostPageCache postPageCache = mock(PostPageCache.class);
+    private final PostHotStore postHotStore = mock(PostHotStore.class);
+
+    // Records each event as its text, e.g. "id:2 event:updated data:Changed[id=1, version=1]"
+    private static class RecordingEmitter extends SseEmitter {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            events.add(builder.build().stream().map(part -> part.getData().toString())
+                    .collect(Collectors.joining()).replace("\n", " ").trim());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        List<String> take(int count) throws InterruptedException {
+            List<String> taken = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String event = events.poll(5, TimeUnit.SECONDS);
+                assertThat(event).as("event %d of %d", i + 1, count).isNotNull();
+                taken.add(event);
+            }
+            return taken;
+        }
+    }
+
+    private PostChangeFeed feed(int bufferSize) {
+        return new PostChangeFeed(postRepository, postCache, postPageCache, postHotStore, bufferSize, Duration.ofMinutes(1));
+    }
+
+    private static PostChange change(long seq, long xid, int postId, int version, String type) {
+        return new PostChange(seq, xid, postId, version, type);
+    }
+
+    @Test
+    public void PostChangeFeed_Poll_SendsSettledChangesToSubscribers() throws Exception {
+        PostChangeFeed feed = feed(10);
+        when(postRepository.findLastSettledChange()).thenReturn(Optional.of(change(4, 100, 4, 0, "created")));
+        when(postRepository.findSettledChanges(100, 4, 500)).thenReturn(List.of(
+                change(5, 101, 1, 1, "updated"),
+                change(6, 102, 2, 1, "deleted")));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        feed.subscribe(emitter, null);
+        feed.poll();
+
+        assertThat(emitter.take(2)).containsExactly(
+                "id:5 event:updated data:Changed[id=1, version=1]",
+                "id:6 event:deleted data:Changed[id=2, version=1]");
+        verify(postCache).evictStale(change(5, 101, 1, 1, "updated"));
+        verify(postHotStore).evictStale(change(6, 102, 2, 1, "deleted"));
+        verify(postPageCache).invalidate();
+    }
+
+    @Test
+    public void PostChangeFeed_ChangeFromAnotherInstance_RefreshesEveryCache() throws Exception {
+        // The real caches, chained as GET /api/posts/{id} chains them: hot store misses load through the post cache
+        PostCache realPostCache = new PostCache(100, Duration.ofMinutes(10));
+        PostPageCache realPageCache = new PostPageCache(true, DataSize.ofMegabytes(1), Duration.ofMinutes(1),
+                DataSize.ofKilobytes(1), Duration.ofSeconds(5));
+        PostHotStore realHotStore = new PostHotStore(new StaticListableBeanFactory().getBeanProvider(ObjectMapper.class),
+                true, DataSize.ofMegabytes(128));
+        PostChangeFeed feed = new PostChangeFeed(postRepository, realPostCache, realPageCache, realHotStore, 10, Duration.ofMinutes(1));
+        AtomicReference<Post> database = new AtomicReference<>(new Post(1, 1, "Before", "Body.", 1));
+        ObjectMapper objectMapper = new ObjectMapper();
+        when(postRepository.findLastSettledChange()).thenReturn(Optional.of(change(1, 100, 1, 1, "created")));
+        when(postRepository.findSettledChanges(100, 1, 500)).thenReturn(List.of(change(2, 101, 1, 2, "updated")));
+
+        assertThat(readThroughCaches(realHotStore, realPostCache, database, objectMapper).title()).isEqualTo("Before");
+        assertThat(page(realPageCache, database)).isEqualTo("Before");
+        // Another instance commits version 2
+        database.set(new Post(1, 1, "After", "Body.", 2));
+        feed.poll();
+
+        assertThat(readThroughCaches(realHotStore, realPostCache, database, objectMapper).title()).isEqualTo("After");
+        assertThat(page(realPageCache, database)).isEqualTo("After");
+    }
+
+    private static Post readThroughCaches(PostHotStore hotStore, PostCache postCache, AtomicReference<Post> database,
+                                          ObjectMapper objectMapper) throws IOException {
+        byte[] json = hotStore.get(1, id -> postCache.get(id, key -> Optional.of(database.get()))).orElseThrow().json();
+        return objectMapper.readValue(json, Post.class);
+    }
+
+    private static String page(PostPageCache pageCache, AtomicReference<Post> database) {
+        PostPageCache.Page page = pageCache.get(null, 10, () -> new PostPageCache.Page(
+                database.get().title().getBytes(StandardCharsets.UTF_8), null, "W/\"" + database.get().version() + "\"", null));
+        return new String(page.json(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void PostChangeFeed_SubscribeWithLastEventId_ReplaysMissedChangesFirst() throws Exception {
+        PostChangeFeed feed = feed(10);
+        when(postRepository.findLastSettledChange()).thenReturn(Optional.of(change(3, 102, 3, 0, "created")));
+        when(postRepository.findChange(1)).thenReturn(Optional.of(change(1, 100, 1, 0, "created")));
+        when(postRepository.findChanges(100, 1, 102, 3, 500)).thenReturn(List.of(
+                change(2, 101, 2, 0, "created"),
+                change(3, 102, 3, 0, "created")));
+        when(postRepository.findSettledChanges(102, 3, 500)).thenReturn(List.of(change(4, 103, 1, 1, "updated")));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        feed.subscribe(emitter, 1L);
+        feed.poll();
+
+        assertThat(emitter.take(3)).extracting(event -> event.substring(0, event.indexOf(' ')))
+                .containsExactly("id:2", "id:3", "id:4");
+    }
+
+    @Test
+    public void PostChangeFeed_SubscribeWithPrunedLastEventId_SendsReset() throws Exception {
+        PostChangeFeed feed = feed(10);
+        when(postRepository.findLastSettledChange()).thenReturn(Optional.of(change(70, 200, 9, 3, "updated")));
+        when(postRepository.findChange(5)).thenReturn(Optional.empty());
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        feed.subscribe(emitter, 5L);
+
+        assertThat(emitter.take(1).getFirst()).startsWith("id:70 event:reset");
+    }
+
+    @Test
+    public void PostChangeFeed_SubscriberFallsBehind_IsDisconnected() throws Exception {
+        PostChangeFeed feed = feed(3);
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new HttpMessageNotWritableException("Interrupted");
+                }
+                super.send(builder);
+            }
+        };
+        when(postRepository.findLastSettledChange()).thenReturn(Optional.empty());
+        when(postRepository.findSettledChanges(anyLong(), anyLong(), anyInt())).thenReturn(
+                List.of(change(1, 100, 1, 1, "updated"), change(2, 100, 2, 1, "updated"), change(3, 100, 3, 1, "updated")),
+                List.of(change(4, 101, 1, 2, "updated"), change(5, 101, 2, 2, "updated"), change(6, 101, 3, 2, "updated")));
+        RecordingEmitter fast = new RecordingEmitter();
+
+        feed.subscribe(slow, null);
+        feed.subscribe(fast, null);
+        feed.poll();
+        assertThat(fast.take(3)).hasSize(3);
+        feed.poll();
+
+        assertThat(slow.completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(fast.take(3)).hasSize(3);
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+        unblock.countDown();
+    }
+}
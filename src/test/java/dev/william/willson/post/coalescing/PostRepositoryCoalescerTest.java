@@ -0,0 +1,105 @@
+package dev.william.willson.post.coalescing;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostRepositoryCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostRepositoryCoalescerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PostRepository target;
+    private PostRepository postRepository;
+
+    @BeforeEach
+    public void setup() {
+        target = mock(PostRepository.class);
+        // Every query blocks until the test lets go, so the whole burst arrives while it is in flight
+        when(target.findByTitle(anyString())).thenAnswer(invocation -> {
+            release.await();
+            return List.of(new Post(1, 1, invocation.getArgument(0), "Body.", 0));
+        });
+        PostRepositoryCoalescer coalescer = new PostRepositoryCoalescer(true);
+        coalescer.bindTo(registry);
+        postRepository = (PostRepository) coalescer.postProcessAfterInitialization(target, "postRepository");
+    }
+
+    private double coalesced() {
+        return registry.get("posts.reads.coalesced").tag("method", "findByTitle").counter().count();
+    }
+
+    private void awaitCoalesced(double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalesced() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitInvocations(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mockingDetails(target).getInvocations().size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void PostRepositoryCoalescer_ConcurrentIdenticalReads_RunOneQueryPerKey() throws Exception {
+        List<Future<List<Post>>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                String title = i % 2 == 0 ? "viral" : "trending";
+                results.add(executor.submit(() -> postRepository.findByTitle(title)));
+            }
+            awaitCoalesced(98);
+            release.countDown();
+
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get(5, TimeUnit.SECONDS)).extracting(Post::title)
+                        .containsExactly(i % 2 == 0 ? "viral" : "trending");
+            }
+        }
+
+        verify(target, times(1)).findByTitle("viral");
+        verify(target, times(1)).findByTitle("trending");
+        assertThat(coalesced()).isEqualTo(98);
+    }
+
+    @Test
+    public void PostRepositoryCoalescer_ReadAfterWrite_DoesNotJoinOlderQuery() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<List<Post>> before = executor.submit(() -> postRepository.findByTitle("viral"));
+            awaitInvocations(1);
+
+            postRepository.deleteById(1);
+            Future<List<Post>> after = executor.submit(() -> postRepository.findByTitle("viral"));
+            // deleteById was the second; the read after it runs a query of its own while the first is still going
+            awaitInvocations(3);
+            release.countDown();
+
+            assertThat(before.get(5, TimeUnit.SECONDS)).hasSize(1);
+            assertThat(after.get(5, TimeUnit.SECONDS)).hasSize(1);
+        }
+
+        verify(target, times(2)).findByTitle("viral");
+        assertThat(coalesced()).isZero();
+    }
+}
@@ -1,43 +1,78 @@
 package dev.william.willson.post.controller;
 
+import dev.william.willson.globalException.DatabaseBusyException;
 import dev.william.willson.globalException.ResourceNotFoundException;
 import dev.william.willson.post.Post;
 import dev.william.willson.post.PostController;
+import dev.william.willson.post.PostExportFormat;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
 import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostSearchHit;
+import dev.william.willson.post.PostWriteBehind;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
 
 @WebMvcTest(PostController.class)  // Use the Controller class, not the test class
 @AutoConfigureMockMvc(addFilters = false)
+@Import({PostPageCache.class, PostHotStore.class})
 public class PostControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private PostPageCache postPageCache;
+
     @MockitoBean
     private PostRepository postRepository;
 
+    @MockitoBean
+    private PostWriteBehind postWriteBehind;
+
     List<Post> posts = new ArrayList<>();
 
     @BeforeEach
     public void setup() {
+        // pages cached by an earlier test would hide this test's stubs
+        postPageCache.invalidate();
         // create some posts
         posts = List.of(
                 new Post(1, 1, "Hello world", "This is my first post.", null),
@@ -75,6 +110,172 @@ public class PostControllerTest {
                 .andExpect(MockMvcResultMatchers.content().json(jsonResponse));
     }
 
+    @Test
+    public void PostController_FindAllPostsAfterId_ReturnsPageWithNextLink() throws Exception {
+        when(postRepository.findByIdGreaterThanOrderById(0, Limit.of(2))).thenReturn(posts);
+
+        ResultActions response = mockMvc.perform(get("/api/posts")
+                .param("after", "0")
+                .param("limit", "2"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, "</api/posts?after=2&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    public void PostController_FindAllPostsLastPage_ReturnsPageWithoutNextLink() throws Exception {
+        when(postRepository.findByIdGreaterThanOrderById(1, Limit.of(10))).thenReturn(posts.subList(1, 2));
+
+        ResultActions response = mockMvc.perform(get("/api/posts")
+                .param("after", "1")
+                .param("limit", "10"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(2))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void PostController_FindAllPostsTwice_SerializesOnce() throws Exception {
+        when(postRepository.findByIdGreaterThanOrderById(0, Limit.of(2))).thenReturn(posts);
+
+        mockMvc.perform(get("/api/posts").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        ResultActions response = mockMvc.perform(get("/api/posts").param("after", "0").param("limit", "2"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, "</api/posts?after=2&limit=2>; rel=\"next\""));
+        verify(postRepository, times(1)).findByIdGreaterThanOrderById(0, Limit.of(2));
+    }
+
+    @Test
+    public void PostController_FindAllPostsAcceptingGzip_ReturnsPrecompressedPage() throws Exception {
+        List<Post> many = new ArrayList<>();
+        for (int id = 1; id <= 50; id++) {
+            many.add(new Post(id, 1, "Post number " + id, "A body long enough to be worth compressing.", 0));
+        }
+        when(postRepository.findAll()).thenReturn(many);
+
+        MvcResult result = mockMvc.perform(get("/api/posts").header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+
+        byte[] gzipped = result.getResponse().getContentAsByteArray();
+        String json;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertThat(gzipped.length).isLessThan(json.length());
+        assertThat(json).startsWith("[{\"id\":1,").contains("\"title\":\"Post number 50\"");
+
+        mockMvc.perform(get("/api/posts").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(MockMvcResultMatchers.content().string(json));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void PostController_StreamAllPosts_ReturnsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            posts.forEach(invocation.getArgument(1, Consumer.class));
+            return null;
+        }).when(postRepository).streamAll(eq(0), any());
+
+        MvcResult result = mockMvc.perform(get("/api/posts").accept("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.content().string("""
+                        {"id":1,"userId":1,"title":"Hello world","body":"This is my first post.","version":null}
+                        {"id":2,"userId":1,"title":"New Post Again!","body":"This is my second post.","version":null}
+                        """));
+    }
+
+    @Test
+    public void PostController_ExportPostsAsCsv_StreamsCopyOutputGzipped() throws Exception {
+        doAnswer(invocation -> {
+            invocation.getArgument(2, OutputStream.class).write("id,user_id,title,body,version\n2,1,Hi,There,0\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(postRepository).copyOut(eq(1), eq(PostExportFormat.CSV), any());
+
+        MvcResult result = mockMvc.perform(get("/api/posts/export")
+                        .param("after", "1")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        byte[] gzipped = mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("text/csv"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"posts.csv\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).endsWith("2,1,Hi,There,0\n");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void PostController_ExportPostsAsNdjson_ResumesAfterCheckpoint() throws Exception {
+        doAnswer(invocation -> {
+            posts.subList(1, 2).forEach(invocation.getArgument(1, Consumer.class));
+            return null;
+        }).when(postRepository).streamAll(eq(1), any());
+
+        MvcResult result = mockMvc.perform(get("/api/posts/export").param("format", "ndjson").param("after", "1"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(MockMvcResultMatchers.content().string("""
+                        {"id":2,"userId":1,"title":"New Post Again!","body":"This is my second post.","version":null}
+                        """));
+    }
+
+    @Test
+    public void PostController_ExportPostsInUnknownFormat_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/api/posts/export").param("format", "arrow"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void PostController_SearchPosts_ReturnsHitsWithNextLink() throws Exception {
+        List<PostSearchHit> hits = List.of(
+                new PostSearchHit(posts.get(0), 0.5f, null),
+                new PostSearchHit(posts.get(1), 0.25f, null));
+        when(postRepository.search("hello world", Float.POSITIVE_INFINITY, 0, 2, false)).thenReturn(hits);
+
+        ResultActions response = mockMvc.perform(get("/api/posts/search")
+                .param("q", "hello world")
+                .param("limit", "2"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].rank").value(0.5))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].snippet").doesNotExist())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK,
+                        "</api/posts/search?q=hello%20world&cursor=0.25:2&limit=2&highlight=false>; rel=\"next\""));
+    }
+
+    @Test
+    public void PostController_SearchPostsWithInvalidCursor_ReturnsBadRequest() throws Exception {
+        ResultActions response = mockMvc.perform(get("/api/posts/search")
+                .param("q", "hello")
+                .param("cursor", "oops"));
+
+        response.andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
     // api/posts/1 -> success
     @Test
     public void PostController_FindPostById_ReturnsPost() throws Exception {
@@ -109,6 +310,87 @@ public class PostControllerTest {
         response.andExpect(MockMvcResultMatchers.status().isNotFound());
     }
 
+    // api/posts?ids=2,999,1,2 -> posts in request order, unknown ids reported
+    @Test
+    public void PostController_FindPostsByIds_ReturnsPostsInRequestOrderAndMissingIds() throws Exception {
+        when(postRepository.findAllByIds(List.of(2, 999, 1)))
+                .thenReturn(Map.of(1, posts.get(0), 2, posts.get(1)));
+
+        ResultActions response = mockMvc.perform(get("/api/posts").param("ids", "2,999,1,2"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.posts[*].id").value(contains(2, 1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.missing").value(contains(999)));
+    }
+
+    @Test
+    public void PostController_BatchGetPosts_ReturnsPostsFromOneLookup() throws Exception {
+        when(postRepository.findAllByIds(List.of(1, 2))).thenReturn(Map.of(1, posts.get(0), 2, posts.get(1)));
+
+        ResultActions response = mockMvc.perform(post("/api/posts/batch-get")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2]"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.posts[*].title").value(contains("Hello world", "New Post Again!")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.missing").isEmpty());
+        verify(postRepository, never()).findById(any());
+    }
+
+    @Test
+    public void PostController_BatchGetTooManyPosts_ReturnsBadRequest() throws Exception {
+        String ids = IntStream.rangeClosed(1, 1001).mapToObj(Integer::toString)
+                .collect(Collectors.joining(",", "[", "]"));
+
+        ResultActions response = mockMvc.perform(post("/api/posts/batch-get")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(ids));
+
+        response.andExpect(MockMvcResultMatchers.status().isBadRequest());
+        verify(postRepository, never()).findAllByIds(any());
+    }
+
+    @Test
+    public void PostController_FindPostByIdWithCurrentETag_ReturnsNotModified() throws Exception {
+        int id = 1;
+        when(postRepository.findById(id)).thenReturn(Optional.of(new Post(1, 1, "Hello world", "This is my first post.", 3)));
+
+        mockMvc.perform(get("/api/posts/{id}", id))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""));
+
+        ResultActions response = mockMvc.perform(get("/api/posts/{id}", id)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\""));
+
+        response.andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    public void PostController_FindAllPostsWithCurrentETag_ReturnsNotModified() throws Exception {
+        when(postRepository.findAll()).thenReturn(posts);
+
+        String eTag = mockMvc.perform(get("/api/posts"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        ResultActions response = mockMvc.perform(get("/api/posts")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+
+        response.andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    public void PostController_FindPostByIdWhenDatabaseBusy_ReturnsServiceUnavailable() throws Exception {
+        int id = 1;
+        when(postRepository.findById(id)).thenThrow(new DatabaseBusyException("Database is busy, try again later"));
+
+        ResultActions response = mockMvc.perform(get("/api/posts/{id}", id));
+
+        response.andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
     @Test
     public void PostController_CreatePost_ReturnsCreatedPost() throws Exception {
         var post = new Post(3, 1, "New Title", "This is a new post.", null);
@@ -156,12 +438,89 @@ public class PostControllerTest {
         response.andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
+    @Test
+    public void PostController_CreatePostsInBulk_ReturnsAcceptedAndRejectedRows() throws Exception {
+        when(postRepository.insertAll(List.of(posts.get(0)))).thenReturn(new int[]{1});
+
+        String ndjson = """
+                {"id":1,"userId":1,"title":"Hello world","body":"This is my first post.","version":null}
+                {"id":2,"userId":1,"title":"","body":"This is my second post.","version":null}
+                """;
+
+        ResultActions response = mockMvc.perform(post("/api/posts/bulk")
+                .contentType("application/x-ndjson")
+                .content(ndjson));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("""
+                        {
+                            "accepted": 1,
+                            "rejected": 1,
+                            "errors": [
+                                {"index": 1, "id": 2, "errors": ["title: must not be empty"]}
+                            ]
+                        }
+                        """));
+    }
+
+    @Test
+    public void PostController_CreatePostsInBulkWithExistingId_ReportsDuplicate() throws Exception {
+        when(postRepository.insertAll(posts)).thenReturn(new int[]{1, 0});
+
+        String json = """
+                [
+                    {"id":1,"userId":1,"title":"Hello world","body":"This is my first post.","version":null},
+                    {"id":2,"userId":1,"title":"New Post Again!","body":"This is my second post.","version":null}
+                ]
+                """;
+
+        ResultActions response = mockMvc.perform(post("/api/posts/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.accepted").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rejected").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[0].errors[0]").value("id: already exists"));
+    }
+
+    @Test
+    public void PostController_CreatePostsInBulkWithUnmappableRows_SkipsThemAndKeepsReading() throws Exception {
+        when(postRepository.insertAll(List.of(posts.get(0)))).thenReturn(new int[]{1});
+
+        String json = """
+                [
+                    {"id":[7],"userId":1,"title":"Nested","body":{"deep":[1,2]}},
+                    null,
+                    {"id":1,"userId":1,"title":"Hello world","body":"This is my first post.","version":null}
+                ]
+                """;
+
+        ResultActions response = mockMvc.perform(post("/api/posts/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.accepted").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rejected").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[0].index").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[1].index").value(1));
+    }
+
+    @Test
+    public void PostController_CreatePostsInBulkWithMalformedStart_ReturnsBadRequest() throws Exception {
+        ResultActions response = mockMvc.perform(post("/api/posts/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[}"));
+
+        response.andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
     @Test
     public void PostController_UpdatePost_ReturnsUpdatedPost() throws Exception {
         Post updatedPost = new Post(3, 1, "Updated Title", "This is a updated post.", null);
 
-        when(postRepository.findById(updatedPost.id())).thenReturn(Optional.of(updatedPost));
-        when(postRepository.save(updatedPost)).thenReturn(updatedPost);
+        when(postRepository.update(updatedPost.id(), null, updatedPost.title(), updatedPost.body())).thenReturn(Optional.of(updatedPost));
 
         String requestBody = STR."""
                 {
@@ -205,6 +564,207 @@ public class PostControllerTest {
         response.andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
+    @Test
+    public void PostController_UpdatePostWithMatchingETag_ReturnsUpdatedPostWithNewETag() throws Exception {
+        Post updatedPost = new Post(3, 1, "Updated Title", "This is a updated post.", 5);
+        when(postRepository.update(3, 4, updatedPost.title(), updatedPost.body())).thenReturn(Optional.of(updatedPost));
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .header(HttpHeaders.IF_MATCH, "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":4}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(5));
+        verify(postRepository, never()).findById(3);
+    }
+
+    @Test
+    public void PostController_UpdatePostWithStaleETag_ReturnsPreconditionFailed() throws Exception {
+        when(postRepository.update(3, 4, "Updated Title", "This is a updated post.")).thenReturn(Optional.empty());
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .header(HttpHeaders.IF_MATCH, "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":4}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+    }
+
+    @Test
+    public void PostController_UpdatePostWithStaleVersion_ReturnsConflict() throws Exception {
+        when(postRepository.update(3, 4, "Updated Title", "This is a updated post.")).thenReturn(Optional.empty());
+        when(postRepository.existsById(3)).thenReturn(true);
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":4}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isConflict());
+    }
+
+    @Test
+    public void PostController_UpdatePostPreferringAsync_ReturnsAcceptedWithPendingVersion() throws Exception {
+        Post current = new Post(3, 1, "Old Title", "This is the old post.", 4);
+        Post queued = new Post(3, 1, "Updated Title", "This is a updated post.", 5);
+        when(postWriteBehind.isEnabled()).thenReturn(true);
+        when(postRepository.findById(3)).thenReturn(Optional.of(current));
+        when(postWriteBehind.enqueue(current, 4, queued.title(), queued.body())).thenReturn(queued);
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .header("Prefer", "respond-async")
+                .header(HttpHeaders.IF_MATCH, "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":4}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(MockMvcResultMatchers.header().string("Preference-Applied", "respond-async"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(5));
+        verify(postRepository, never()).update(eq(3), any(), any(), any());
+    }
+
+    @Test
+    public void PostController_UpdatePostPreferringAsyncWhenQueueFull_UpdatesRightAway() throws Exception {
+        Post current = new Post(3, 1, "Old Title", "This is the old post.", 4);
+        Post updatedPost = new Post(3, 1, "Updated Title", "This is a updated post.", 5);
+        when(postWriteBehind.isEnabled()).thenReturn(true);
+        when(postRepository.findById(3)).thenReturn(Optional.of(current));
+        when(postRepository.update(3, null, updatedPost.title(), updatedPost.body())).thenReturn(Optional.of(updatedPost));
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":null}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(5));
+    }
+
+    @Test
+    public void PostController_PatchPost_UpdatesOnlyGivenFields() throws Exception {
+        Post patchedPost = new Post(1, 1, "Patched title", "This is my first post.", 2);
+        when(postRepository.update(1, 1, "Patched title", null)).thenReturn(Optional.of(patchedPost));
+
+        ResultActions response = mockMvc.perform(patch("/api/posts/{id}", 1)
+                .contentType("application/merge-patch+json")
+                .content("""
+                        {"title":"Patched title","version":1}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("Patched title"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.body").value("This is my first post."))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"2\""));
+    }
+
+    @Test
+    public void PostController_PatchPostWithUnchangedUserId_UpdatesPost() throws Exception {
+        Post patchedPost = new Post(1, 1, "Patched title", "This is my first post.", 2);
+        when(postRepository.findById(1)).thenReturn(Optional.of(posts.get(0)));
+        when(postRepository.update(1, 1, "Patched title", "This is my first post.")).thenReturn(Optional.of(patchedPost));
+
+        // The whole document as fetched, with the title changed
+        ResultActions response = mockMvc.perform(patch("/api/posts/{id}", 1)
+                .contentType("application/merge-patch+json")
+                .content("""
+                        {"id":1,"userId":1,"title":"Patched title","body":"This is my first post.","version":1}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("Patched title"));
+    }
+
+    @Test
+    public void PostController_PatchPostRemovingTitle_ReturnsBadRequest() throws Exception {
+        when(postRepository.findById(1)).thenReturn(Optional.of(posts.get(0)));
+
+        ResultActions response = mockMvc.perform(patch("/api/posts/{id}", 1)
+                .contentType("application/merge-patch+json")
+                .content("""
+                        {"title":null,"userId":7}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().string("title: must not be empty, userId: cannot be changed"));
+    }
+
+    @Test
+    public void PostController_DeletePostWithStaleETag_ReturnsPreconditionFailed() throws Exception {
+        when(postRepository.deleteIfVersion(1, 2)).thenReturn(false);
+
+        ResultActions response = mockMvc.perform(delete("/api/posts/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "\"2\""));
+
+        response.andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        verify(postRepository, never()).deleteById(1);
+    }
+
+    @Test
+    public void PostController_DeleteMissingPostWithAnyETag_ReturnsPreconditionFailed() throws Exception {
+        when(postRepository.existsById(1)).thenReturn(false);
+
+        ResultActions response = mockMvc.perform(delete("/api/posts/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "*"));
+
+        response.andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        verify(postRepository, never()).deleteById(1);
+    }
+
+    @Test
+    public void PostController_DeletePostWithAnyETag_ReturnsIsDeleted() throws Exception {
+        when(postRepository.existsById(1)).thenReturn(true);
+
+        ResultActions response = mockMvc.perform(delete("/api/posts/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "*"));
+
+        response.andExpect(MockMvcResultMatchers.status().isNoContent());
+        verify(postRepository).deleteById(1);
+    }
+
+    @Test
+    public void PostController_UpdateMissingPostWithAnyETag_ReturnsPreconditionFailed() throws Exception {
+        when(postRepository.existsById(3)).thenReturn(false);
+
+        ResultActions response = mockMvc.perform(put("/api/posts/{id}", 3)
+                .header(HttpHeaders.IF_MATCH, "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"id":3,"userId":1,"title":"Updated Title","body":"This is a updated post.","version":4}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+        verify(postRepository, never()).update(eq(3), any(), any(), any());
+    }
+
+    @Test
+    public void PostController_PatchPostWithAnyETag_IgnoresBodyVersion() throws Exception {
+        Post patchedPost = new Post(1, 1, "Patched title", "This is my first post.", 8);
+        when(postRepository.existsById(1)).thenReturn(true);
+        when(postRepository.update(1, null, "Patched title", null)).thenReturn(Optional.of(patchedPost));
+
+        ResultActions response = mockMvc.perform(patch("/api/posts/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "*")
+                .contentType("application/merge-patch+json")
+                .content("""
+                        {"title":"Patched title","version":1}
+                        """));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"8\""));
+    }
+
     @Test
     public void PostController_DeletePostById_ReturnsIsDeleted() throws Exception {
         int id = 1;
@@ -0,0 +1,96 @@
+package dev.william.willson.post.controller;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostSummary;
+import dev.william.willson.post.UserPostController;
+import dev.william.willson.post.UserPostCount;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@WebMvcTest(UserPostController.class)
+@AutoConfigureMockMvc(addFilters = false)
+public class UserPostControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private PostRepository postRepository;
+
+    @Test
+    public void UserPostController_FindPostsByUser_ReturnsPageWithNextLink() throws Exception {
+        when(postRepository.findByUserIdAndIdGreaterThanOrderById(1, 0, Limit.of(2))).thenReturn(List.of(
+                new Post(1, 1, "Hello world", "This is my first post.", 0),
+                new Post(2, 1, "New Post Again!", "This is my second post.", 0)
+        ));
+
+        ResultActions response = mockMvc.perform(get("/api/users/{userId}/posts", 1)
+                .param("limit", "2"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].body").value("This is my second post."))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK,
+                        "</api/users/1/posts?after=2&limit=2&view=full>; rel=\"next\""));
+    }
+
+    @Test
+    public void UserPostController_FindPostSummariesByUser_ReturnsPostsWithoutBody() throws Exception {
+        when(postRepository.findSummariesByUserId(1, 1, 10)).thenReturn(List.of(new PostSummary(2, "New Post Again!", 0)));
+
+        ResultActions response = mockMvc.perform(get("/api/users/{userId}/posts", 1)
+                .param("after", "1")
+                .param("limit", "10")
+                .param("view", "summary"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("""
+                        [{"id": 2, "title": "New Post Again!", "version": 0}]
+                        """, JsonCompareMode.STRICT))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void UserPostController_FindPostsByUserWithUnknownView_ReturnsBadRequest() throws Exception {
+        ResultActions response = mockMvc.perform(get("/api/users/{userId}/posts", 1)
+                .param("view", "everything"));
+
+        response.andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void UserPostController_CountPostsOfUser_ReturnsCount() throws Exception {
+        when(postRepository.countPostsOfUser(3)).thenReturn(10L);
+
+        ResultActions response = mockMvc.perform(get("/api/users/{userId}/posts/count", 3));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("""
+                        {"userId": 3, "postCount": 10}
+                        """));
+    }
+
+    @Test
+    public void UserPostController_CountPostsByUser_ReturnsAllCounts() throws Exception {
+        when(postRepository.countPostsByUser()).thenReturn(List.of(new UserPostCount(1, 10), new UserPostCount(2, 4)));
+
+        ResultActions response = mockMvc.perform(get("/api/users/post-counts"));
+
+        response.andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].postCount").value(4));
+    }
+}
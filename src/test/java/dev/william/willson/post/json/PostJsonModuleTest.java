@@ -0,0 +1,98 @@
+package dev.william.willson.post.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostDataGenerator;
+import dev.william.willson.post.PostJsonModule;
+import dev.william.willson.post.PostSearchHit;
+import dev.william.willson.post.Posts;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// PostJsonModule against Jackson's own record handling, both on the ObjectMapper Spring Boot configures
+public class PostJsonModuleTest {
+
+    private final ObjectMapper jackson = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper direct = Jackson2ObjectMapperBuilder.json().build().registerModule(new PostJsonModule());
+
+    private static List<Post> posts() {
+        List<Post> posts = new ArrayList<>();
+        PostDataGenerator generator = new PostDataGenerator(42, 1000);
+        for (int i = 0; i < 1000; i++) {
+            posts.add(generator.next());
+        }
+        posts.add(new Post(null, null, null, null, null));
+        posts.add(new Post(Integer.MIN_VALUE, Integer.MAX_VALUE, "", "", 0));
+        posts.add(new Post(1, 2, "Quotes \" and \\ slashes / and \t tabs", "Line\nbreaks\r\n and \u0001 control", 7));
+        posts.add(new Post(3, 4, "Ünïcödé títle — 日本語", "Emoji 😀 and </script> <b>tags</b>", 1));
+        return posts;
+    }
+
+    @Test
+    public void PostJsonModuleTest_SerializePosts_ReturnsSameBytesAsJackson() throws Exception {
+        for (Post post : posts()) {
+            assertThat(direct.writeValueAsBytes(post)).isEqualTo(jackson.writeValueAsBytes(post));
+            assertThat(direct.writeValueAsString(post)).isEqualTo(jackson.writeValueAsString(post));
+        }
+        Posts posts = new Posts(posts());
+        assertThat(direct.writeValueAsBytes(posts)).isEqualTo(jackson.writeValueAsBytes(posts));
+        assertThat(direct.writeValueAsBytes(posts.posts())).isEqualTo(jackson.writeValueAsBytes(posts.posts()));
+        assertThat(direct.writeValueAsBytes(new Posts(null))).isEqualTo(jackson.writeValueAsBytes(new Posts(null)));
+        // Unwrapped into the hit's own object
+        List<PostSearchHit> hits = List.of(new PostSearchHit(posts.posts().getFirst(), 0.5f, null),
+                new PostSearchHit(posts.posts().getLast(), 0.25f, "<b>title</b>"));
+        assertThat(direct.writeValueAsBytes(hits)).isEqualTo(jackson.writeValueAsBytes(hits));
+    }
+
+    @Test
+    public void PostJsonModuleTest_DeserializePosts_ReturnsSamePostsAsJackson() throws Exception {
+        Posts posts = new Posts(posts());
+        byte[] json = jackson.writeValueAsBytes(posts);
+
+        assertThat(direct.readValue(json, Posts.class)).isEqualTo(posts);
+        assertThat(direct.readValue(json, Posts.class)).isEqualTo(jackson.readValue(json, Posts.class));
+        assertThat(direct.readValue("{\"posts\":null}", Posts.class)).isEqualTo(new Posts(null));
+    }
+
+    @Test
+    public void PostJsonModuleTest_DeserializeLenientInput_ReturnsSameAsJackson() throws Exception {
+        List<String> inputs = List.of(
+                "{}",
+                "{\"version\":3,\"body\":\"b\",\"title\":\"t\",\"userId\":2,\"id\":1}",
+                "{\"id\":\"5\",\"userId\":1.0,\"title\":7,\"body\":true}",
+                "{\"title\":\"first\",\"title\":\"last\"}",
+                "{\"extra\":{\"nested\":[1,2,{\"id\":9}]},\"id\":1}",
+                "{\"id\":null,\"title\":null}");
+        for (String input : inputs) {
+            assertThat(direct.readValue(input, Post.class)).isEqualTo(jackson.readValue(input, Post.class));
+        }
+        String array = "[{\"id\":1,\"title\":\"a\"},{\"id\":2,\"title\":\"b\"}]";
+        assertThat(direct.readValue(array, new TypeReference<List<Post>>() {}))
+                .isEqualTo(jackson.readValue(array, new TypeReference<List<Post>>() {}));
+        assertThat(direct.treeToValue(jackson.readTree(array).get(1), Post.class)).isEqualTo(new Post(2, null, "b", null, null));
+    }
+
+    @Test
+    public void PostJsonModuleTest_DeserializeInvalidInput_ThrowsLikeJackson() throws Exception {
+        assertThatThrownBy(() -> direct.readValue("{\"id\":[1]}", Post.class))
+                .isInstanceOf(MismatchedInputException.class)
+                .hasMessageContaining("java.lang.Integer")
+                .hasMessageContaining("[\"id\"]");
+        assertThatThrownBy(() -> direct.readValue("[1]", Post.class)).isInstanceOf(MismatchedInputException.class);
+
+        ObjectMapper strict = direct.copy().enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        assertThatThrownBy(() -> strict.readValue("{\"id\":1,\"extra\":2}", Post.class))
+                .isInstanceOf(UnrecognizedPropertyException.class)
+                .hasMessageContaining("\"extra\"");
+    }
+}
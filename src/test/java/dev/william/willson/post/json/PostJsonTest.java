@@ -1,5 +1,6 @@
 package dev.william.willson.post.json;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.william.willson.post.Post;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +15,9 @@ public class PostJsonTest {
     @Autowired
     private JacksonTester<Post> jacksonTester;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Test
     public void PostJsonTest_SerializePost_ReturnsPost() throws Exception {
         Post post = new Post(1,1,"NEW POST!","CONTENT BODY.", null);
@@ -51,4 +55,10 @@ public class PostJsonTest {
         assertThat(jacksonTester.parseObject(content).body()).isEqualTo(post.body());
         assertThat(jacksonTester.parseObject(content).version()).isEqualTo(post.version());
     }
+
+    @Test
+    public void PostJsonTest_ObjectMapper_UsesPostJsonModule() throws Exception {
+        // The tests above then cover the hand-written serializer, which posts.json.codec=direct selects by default
+        assertThat(objectMapper.getRegisteredModuleIds()).contains("PostJsonModule");
+    }
 }
@@ -0,0 +1,50 @@
+package dev.william.willson.post.limiter;
+
+import dev.william.willson.globalException.DatabaseBusyException;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostRepositoryLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PostRepositoryLimiterTest {
+
+    @Test
+    public void PostRepositoryLimiter_StreamInProgress_LeavesCallPermitsFree() throws Exception {
+        PostRepository target = mock(PostRepository.class);
+        CountDownLatch streaming = new CountDownLatch(1);
+        CountDownLatch downloaded = new CountDownLatch(1);
+        // A stream that lasts until its client has downloaded everything
+        doAnswer(invocation -> {
+            streaming.countDown();
+            downloaded.await();
+            return null;
+        }).when(target).streamAll(anyInt(), any());
+        when(target.findByTitle("Title")).thenReturn(List.of(new Post(1, 1, "Title", "Body.", 0)));
+        PostRepository postRepository = (PostRepository) new PostRepositoryLimiter(1, 1, Duration.ofMillis(100))
+                .postProcessAfterInitialization(target, "postRepository");
+
+        Thread stream = Thread.ofVirtual().start(() -> postRepository.streamAll(0, post -> {
+        }));
+        assertThat(streaming.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(postRepository.findByTitle("Title")).hasSize(1);
+        assertThatThrownBy(() -> postRepository.streamAll(0, post -> {
+        })).isInstanceOf(DatabaseBusyException.class);
+
+        downloaded.countDown();
+        stream.join();
+    }
+}
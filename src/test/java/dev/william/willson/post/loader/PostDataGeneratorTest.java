@@ -0,0 +1,61 @@
+package dev.william.willson.post.loader;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostDataGeneratorTest {
+
+    private static List<Post> generate(long seed, int count) {
+        PostDataGenerator generator = new PostDataGenerator(seed, count);
+        List<Post> posts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            posts.add(generator.next());
+        }
+        return posts;
+    }
+
+    @Test
+    public void PostDataGeneratorTest_SameSeed_ReturnsSamePosts() throws Exception {
+        assertThat(generate(7, 500)).isEqualTo(generate(7, 500));
+        assertThat(generate(7, 500)).isNotEqualTo(generate(8, 500));
+    }
+
+    @Test
+    public void PostDataGeneratorTest_Next_ReturnsValidPostsWithSequentialIds() throws Exception {
+        List<Post> posts = generate(42, 10_000);
+
+        assertThat(posts).extracting(Post::id).startsWith(1, 2, 3).endsWith(10_000);
+        assertThat(posts).allSatisfy(post -> {
+            assertThat(post.title()).isNotBlank().hasSizeLessThanOrEqualTo(255);
+            assertThat(post.body().length()).isBetween(40, 20_200);
+            assertThat(post.userId()).isBetween(1, PostDataGenerator.usersFor(10_000));
+            assertThat(post.version()).isNull();
+        });
+    }
+
+    @Test
+    public void PostDataGeneratorTest_Sizes_ReturnsLongTailedDistribution() throws Exception {
+        List<Integer> bodyLengths = generate(42, 10_000).stream().map(post -> post.body().length()).sorted().toList();
+
+        // Median near 600 characters, with a tail several times longer
+        assertThat(bodyLengths.get(5_000)).isBetween(500, 750);
+        assertThat(bodyLengths.get(9_900)).isGreaterThan(2_500);
+    }
+
+    @Test
+    public void PostDataGeneratorTest_Authors_ReturnsFewUsersWithManyPosts() throws Exception {
+        Map<Integer, Long> postsPerUser = generate(42, 10_000).stream()
+                .collect(Collectors.groupingBy(Post::userId, Collectors.counting()));
+
+        assertThat(postsPerUser.get(1)).isGreaterThan(500);
+        assertThat(postsPerUser.values().stream().sorted().toList().get(postsPerUser.size() / 2)).isLessThan(20);
+    }
+}
@@ -0,0 +1,165 @@
+package dev.william.willson.post.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostDataLoader;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class PostDataLoaderTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final PostHotStore postHotStore = mock(PostHotStore.class);
+    // Background work waits here until the test runs it
+    private final List<Runnable> tasks = new ArrayList<>();
+    // Ids of each insertAll call, copied because the loader reuses its batch list
+    private final List<List<Integer>> batches = new ArrayList<>();
+
+    private static ByteArrayResource postsJson(int count) {
+        String posts = IntStream.rangeClosed(1, count)
+                .mapToObj(id -> "{\"userId\": 1, \"id\": " + id + ", \"title\": \"Post " + id + "\", \"body\": \"Body.\"}")
+                .collect(Collectors.joining(", "));
+        return new ByteArrayResource(("{\"posts\": [" + posts + "]}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PostDataLoader loader(int posts, int batchSize, boolean async, boolean enabled) {
+        return new PostDataLoader(new ObjectMapper(), postRepository, postHotStore, tasks::add, postsJson(posts),
+                batchSize, async, enabled, 0, 42);
+    }
+
+    // Every post is new except ids in existing, which ON CONFLICT skips with a count of 0
+    private void insertAllSkipping(Integer... existing) {
+        List<Integer> skipped = Arrays.asList(existing);
+        when(postRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Post> batch = invocation.getArgument(0);
+            batches.add(batch.stream().map(Post::id).toList());
+            return batch.stream().mapToInt(post -> skipped.contains(post.id()) ? 0 : 1).toArray();
+        });
+    }
+
+    private static String state(Health health) {
+        return String.valueOf(health.getDetails().get("state"));
+    }
+
+    private static double loadedGauge(PostDataLoader loader) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        loader.bindTo(registry);
+        return registry.get("posts.loader.loaded").gauge().value();
+    }
+
+    @Test
+    public void PostDataLoader_PostsNotMultipleOfBatchSize_InsertsFinalPartialBatch() throws Exception {
+        insertAllSkipping();
+        PostDataLoader loader = loader(5, 2, false, true);
+
+        loader.run();
+
+        assertThat(batches).containsExactly(List.of(1, 2), List.of(3, 4), List.of(5));
+        assertThat(loader.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(state(loader.health())).isEqualTo("COMPLETED");
+        assertThat(loader.health().getDetails()).containsEntry("loaded", 5L);
+        assertThat(loadedGauge(loader)).isEqualTo(5);
+    }
+
+    @Test
+    public void PostDataLoader_PostsMultipleOfBatchSize_DoesNotInsertEmptyBatch() throws Exception {
+        insertAllSkipping();
+        PostDataLoader loader = loader(4, 2, false, true);
+
+        loader.run();
+
+        assertThat(batches).containsExactly(List.of(1, 2), List.of(3, 4));
+    }
+
+    @Test
+    public void PostDataLoader_RowsSkippedOnConflict_AreNotCounted() throws Exception {
+        insertAllSkipping(2, 5);
+        PostDataLoader loader = loader(5, 2, false, true);
+
+        loader.run();
+
+        assertThat(batches).hasSize(3);
+        assertThat(loader.health().getDetails()).containsEntry("loaded", 3L);
+        assertThat(loadedGauge(loader)).isEqualTo(3);
+    }
+
+    @Test
+    public void PostDataLoader_Async_ReportsPendingLoadingThenCompleted() throws Exception {
+        PostDataLoader loader = loader(3, 2, true, true);
+        List<String> statesDuringInsert = new ArrayList<>();
+        when(postRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            statesDuringInsert.add(state(loader.health()) + " " + loader.health().getStatus());
+            return new int[((List<?>) invocation.getArgument(0)).size()];
+        });
+
+        loader.run();
+
+        assertThat(state(loader.health())).isEqualTo("PENDING");
+        assertThat(loader.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        verify(postRepository, never()).insertAll(anyList());
+        assertThat(tasks).hasSize(1);
+
+        tasks.removeFirst().run();
+
+        assertThat(statesDuringInsert).containsExactly("LOADING OUT_OF_SERVICE", "LOADING OUT_OF_SERVICE");
+        assertThat(state(loader.health())).isEqualTo("COMPLETED");
+        assertThat(loader.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void PostDataLoader_AsyncInsertFails_ReportsFailed() throws Exception {
+        when(postRepository.insertAll(anyList())).thenThrow(new IllegalStateException("database is gone"));
+        PostDataLoader loader = loader(3, 2, true, true);
+
+        loader.run();
+        // The failure is logged on the background thread rather than thrown from it
+        tasks.removeFirst().run();
+
+        assertThat(state(loader.health())).isEqualTo("FAILED");
+        assertThat(loader.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(loader.health().getDetails()).containsEntry("loaded", 0L);
+    }
+
+    @Test
+    public void PostDataLoader_Disabled_SkipsWithoutTouchingDatabase() throws Exception {
+        PostDataLoader loader = loader(3, 2, false, false);
+
+        loader.run();
+
+        verifyNoInteractions(postRepository);
+        assertThat(tasks).isEmpty();
+        assertThat(state(loader.health())).isEqualTo("SKIPPED");
+        assertThat(loader.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void PostDataLoader_TableNotEmpty_SkipsLoading() throws Exception {
+        when(postRepository.count()).thenReturn(10L);
+        PostDataLoader loader = loader(3, 2, false, true);
+
+        loader.run();
+
+        verify(postRepository, never()).insertAll(anyList());
+        assertThat(state(loader.health())).isEqualTo("SKIPPED");
+    }
+}
@@ -0,0 +1,150 @@
+package dev.william.willson.post.repository;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostCache;
+import dev.william.willson.post.PostChange;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostPartitionScanner;
+import dev.william.willson.post.PostRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+// The partitioned profile's schema. Rows are committed rather than rolled back with the test, since parallel
+// scans read them on connections of their own.
+@Testcontainers
+@DataJdbcTest
+@ActiveProfiles("partitioned")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostCache.class, PostPageCache.class, PostHotStore.class, PostPartitionScanner.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PartitionedPostRepositoryTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16.0");
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoSpyBean
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        // Inserted in reverse so id order has to come from the merge
+        List<Post> posts = new ArrayList<>();
+        for (int id = 1000; id >= 1; id--) {
+            posts.add(new Post(id, id % 10, "Post " + id, "This is a test case.", null));
+        }
+        postRepository.insertAll(posts);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("TRUNCATE post, post_user_stats, post_change");
+    }
+
+    @Test
+    public void PartitionedPostRepositoryTest_Schema_SpreadsPostsOverSixteenPartitions() throws Exception {
+        List<Long> counts = jdbcTemplate.queryForList(
+                "SELECT count(*) FROM post GROUP BY tableoid ORDER BY tableoid", Long.class);
+
+        assertThat(counts).hasSize(16).allSatisfy(count -> assertThat(count).isBetween(30L, 100L));
+    }
+
+    @Test
+    public void PartitionedPostRepositoryTest_FindAllAndCount_MergeAllPartitions() throws Exception {
+        assertThat(postRepository.count()).isEqualTo(1000);
+        assertThat(postRepository.findAll()).extracting(Post::id)
+                .containsExactlyElementsOf(IntStream.rangeClosed(1, 1000).boxed().toList());
+    }
+
+    @Test
+    public void PartitionedPostRepositoryTest_StreamAllPostsAfterId_VisitsRemainingPostsInIdOrder() throws Exception {
+        List<Post> posts = new ArrayList<>();
+        postRepository.streamAll(990, posts::add);
+
+        assertThat(posts).extracting(Post::id).containsExactly(991, 992, 993, 994, 995, 996, 997, 998, 999, 1000);
+    }
+
+    @Test
+    public void PartitionedPostRepositoryTest_StreamAllStoppedByAction_ReleasesWorkers() throws Exception {
+        List<Post> posts = new ArrayList<>();
+        assertThatThrownBy(() -> postRepository.streamAll(0, post -> {
+            if (posts.size() == 10) {
+                throw new IllegalStateException("Client went away");
+            }
+            posts.add(post);
+        })).hasMessage("Client went away");
+
+        // Every worker slot is free again
+        for (int i = 0; i < 5; i++) {
+            assertThat(postRepository.count()).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void PartitionedPostRepositoryTest_WorkerGetsNoConnection_FailsScanAndReleasesWorkers() throws Exception {
+        // The first transaction is findAll's own, the rest are the workers'; the second worker to start gets none
+        AtomicInteger transactions = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (transactions.incrementAndGet() == 3) {
+                throw new CannotCreateTransactionException("Could not open JDBC Connection for transaction");
+            }
+            return invocation.callRealMethod();
+        }).when(transactionManager).getTransaction(any(TransactionDefinition.class));
+
+        assertThatThrownBy(() -> postRepository.findAll()).isInstanceOf(CannotCreateTransactionException.class);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(postRepository.count()).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    public void PartitionedPostRepositoryTest_Writes_KeepStatsAndChangeFeed() throws Exception {
+        postRepository.update(1, null, "Changed", null);
+        postRepository.deleteById(2);
+
+        assertThat(postRepository.countPostsOfUser(2)).isEqualTo(99);
+        assertThat(postRepository.findById(1)).map(Post::title).contains("Changed");
+        List<PostChange> changes = postRepository.findChanges(0, 0, Long.MAX_VALUE, Long.MAX_VALUE, 2000);
+        assertThat(changes).hasSize(1002);
+        assertThat(changes.getLast().type()).isEqualTo("deleted");
+        assertThat(postRepository.search("Changed", Float.POSITIVE_INFINITY, 0, 10, false)).hasSize(1);
+    }
+}
@@ -1,24 +1,42 @@
 package dev.william.willson.post.repository;
 
 import dev.william.willson.post.Post;
+import dev.william.willson.post.PostCache;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostChange;
+import dev.william.willson.post.PostExportFormat;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostPartitionScanner;
 import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostUpdate;
+import dev.william.willson.post.PostSearchHit;
+import dev.william.willson.post.PostSummary;
+import dev.william.willson.post.UserPostCount;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @Testcontainers
 @DataJdbcTest
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostCache.class, PostPageCache.class, PostHotStore.class, PostPartitionScanner.class})
 public class PostRepositoryTest {
 
     @Container
@@ -55,5 +73,160 @@ public class PostRepositoryTest {
         assertThat(posts).extracting(Post::getTitle).containsOnly("Hello, new world.");
     }
 
+    @Test
+    public void PostRepositoryTest_FindPostsAfterId_ReturnsNextPageInIdOrder() throws Exception {
+        List<Post> posts = postRepository.findByIdGreaterThanOrderById(1, Limit.of(2));
+        assertThat(posts).extracting(Post::id).containsExactly(2, 3);
+    }
+
+    @Test
+    public void PostRepositoryTest_FindAllByIds_ReturnsOnlyExistingPosts() throws Exception {
+        Map<Integer, Post> posts = postRepository.findAllByIds(List.of(4, 999, 2));
+
+        assertThat(posts).containsOnlyKeys(2, 4);
+        assertThat(posts.get(4).title()).isEqualTo("Hello, new world. Good for sharing");
+    }
+
+    @Test
+    public void PostRepositoryTest_StreamAllPostsAfterId_VisitsRemainingPostsInIdOrder() throws Exception {
+        List<Post> posts = new ArrayList<>();
+        postRepository.streamAll(2, posts::add);
+        assertThat(posts).extracting(Post::id).containsExactly(3, 4);
+    }
+
+    @Test
+    public void PostRepositoryTest_CopyOutCsv_WritesHeaderOnlyOnFirstPart() throws Exception {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+
+        assertThat(postRepository.copyOut(0, PostExportFormat.CSV, first)).isEqualTo(4);
+        assertThat(postRepository.copyOut(3, PostExportFormat.CSV, resumed)).isEqualTo(1);
+
+        assertThat(first.toString(StandardCharsets.UTF_8)).startsWith("""
+                id,user_id,title,body,version
+                1,1,"Hello, new world.",This is a test case.,0
+                """);
+        assertThat(resumed.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                4,3,"Hello, new world. Good for sharing",This is a test case.,0
+                """);
+    }
+
+    @Test
+    public void PostRepositoryTest_InsertAllWithExistingId_SkipsExistingPost() throws Exception {
+        int[] counts = postRepository.insertAll(List.of(
+                new Post(4, 3, "Already here", "This is a duplicate.", null),
+                new Post(5, 3, "Brand new", "This is a bulk insert.", null)
+        ));
+
+        assertThat(counts).containsExactly(0, 1);
+        assertThat(postRepository.findById(4)).map(Post::title).contains("Hello, new world. Good for sharing");
+        assertThat(postRepository.findById(5)).map(Post::version).contains(0);
+    }
+
+    @Test
+    public void PostRepositoryTest_FindPostsOfUser_ReturnsOnlyThatUsersPostsInIdOrder() throws Exception {
+        assertThat(postRepository.findByUserIdAndIdGreaterThanOrderById(2, 0, Limit.of(10)))
+                .extracting(Post::id).containsExactly(2, 3);
+        assertThat(postRepository.findSummariesByUserId(2, 2, 10))
+                .containsExactly(new PostSummary(3, "Hello, new world.", 0));
+    }
+
+    @Test
+    public void PostRepositoryTest_CountPostsOfUser_FollowsInsertsAndDeletes() throws Exception {
+        assertThat(postRepository.countPostsOfUser(2)).isEqualTo(2);
+
+        postRepository.insertAll(List.of(new Post(5, 2, "Another one", "This is a bulk insert.", null)));
+        postRepository.deleteById(2);
+        postRepository.save(new Post(6, 9, "Brand new user", "This is a test case.", null));
+
+        assertThat(postRepository.countPostsOfUser(2)).isEqualTo(2);
+        assertThat(postRepository.countPostsOfUser(9)).isEqualTo(1);
+        assertThat(postRepository.countPostsOfUser(42)).isZero();
+        assertThat(postRepository.countPostsByUser()).contains(new UserPostCount(3, 1), new UserPostCount(9, 1));
+    }
+
+    @Test
+    public void PostRepositoryTest_UpdateWithVersion_OnlyUpdatesCurrentVersion() throws Exception {
+        int version = postRepository.findById(1).orElseThrow().version();
+
+        assertThat(postRepository.update(1, version + 1, "Stale", "This write lost the race.")).isEmpty();
+        assertThat(postRepository.update(1, version, "Fresh", "This write won.")).get()
+                .satisfies(post -> {
+                    assertThat(post.title()).isEqualTo("Fresh");
+                    assertThat(post.version()).isEqualTo(version + 1);
+                });
+        assertThat(postRepository.findById(1)).map(Post::title).contains("Fresh");
+    }
+
+    @Test
+    public void PostRepositoryTest_UpdateOnlyTitle_KeepsBody() throws Exception {
+        assertThat(postRepository.update(3, null, "Just the title", null)).get()
+                .satisfies(post -> {
+                    assertThat(post.title()).isEqualTo("Just the title");
+                    assertThat(post.body()).isEqualTo("This is a test case.");
+                });
+        assertThat(postRepository.update(999, null, "Nobody home", null)).isEmpty();
+    }
+
+    @Test
+    public void PostRepositoryTest_UpdateAll_SkipsStaleAndMissingPosts() throws Exception {
+        int version = postRepository.findById(1).orElseThrow().version();
+        int unchecked = postRepository.findById(3).orElseThrow().version();
+
+        int[] counts = postRepository.updateAll(List.of(
+                new PostUpdate(new Post(1, 1, "Batched", "Checked against the current version.", version + 3), version),
+                new PostUpdate(new Post(2, 2, "Stale", "This write lost the race.", version + 2), version + 1),
+                new PostUpdate(new Post(3, 2, "Unchecked", "Last write wins.", 0), null),
+                new PostUpdate(new Post(999, 3, "Nobody home", "This post does not exist.", 1), null)
+        ));
+
+        assertThat(counts).containsExactly(1, 0, 1, 0);
+        assertThat(postRepository.findById(1)).map(Post::version).contains(version + 3);
+        assertThat(postRepository.findById(2)).map(Post::title).contains("Hello, new world.");
+        // Never moved backwards, even when the queued version is behind
+        assertThat(postRepository.findById(3)).get().satisfies(post -> {
+            assertThat(post.title()).isEqualTo("Unchecked");
+            assertThat(post.version()).isEqualTo(unchecked + 1);
+        });
+    }
+
+    @Test
+    public void PostRepositoryTest_DeleteIfVersion_OnlyDeletesCurrentVersion() throws Exception {
+        int version = postRepository.findById(2).orElseThrow().version();
+
+        assertThat(postRepository.deleteIfVersion(2, version + 1)).isFalse();
+        assertThat(postRepository.deleteIfVersion(2, version)).isTrue();
+        assertThat(postRepository.findById(2)).isEmpty();
+    }
+
+    @Test
+    public void PostRepositoryTest_WritePosts_RecordsChangesThatSettleOnCommit() throws Exception {
+        postRepository.update(1, null, "Changed", null);
+        postRepository.deleteById(2);
+
+        List<PostChange> changes = postRepository.findChanges(0, 0, Long.MAX_VALUE, Long.MAX_VALUE, 100);
+        assertThat(changes).extracting(PostChange::type, PostChange::postId, PostChange::version).containsExactly(
+                tuple("created", 1, 0), tuple("created", 2, 0), tuple("created", 3, 0), tuple("created", 4, 0),
+                tuple("updated", 1, 1), tuple("deleted", 2, 0));
+        assertThat(postRepository.findChange(changes.getLast().seq())).contains(changes.getLast());
+        // This test's transaction is still running, so none of its changes can be handed out yet
+        assertThat(postRepository.findSettledChanges(0, 0, 100)).isEmpty();
+    }
+
+    @Test
+    public void PostRepositoryTest_SearchPosts_RanksBestMatchFirstAndPagesByCursor() throws Exception {
+        List<PostSearchHit> first = postRepository.search("sharing", Float.POSITIVE_INFINITY, 0, 1, true);
+        assertThat(first).extracting(hit -> hit.post().id()).containsExactly(4);
+        assertThat(first.getFirst().snippet()).isNotNull();
+
+        List<PostSearchHit> hits = postRepository.search("world", Float.POSITIVE_INFINITY, 0, 3, false);
+        assertThat(hits).hasSize(3).allMatch(hit -> hit.snippet() == null);
+        PostSearchHit last = hits.getLast();
+        List<PostSearchHit> rest = postRepository.search("world", last.rank(), last.post().id(), 3, false);
+        assertThat(rest).extracting(hit -> hit.post().id())
+                .hasSize(1)
+                .doesNotContainAnyElementsOf(hits.stream().map(hit -> hit.post().id()).toList());
+    }
+
 
 }
@@ -0,0 +1,134 @@
+package dev.william.willson.post.writebehind;
+
+import dev.william.willson.globalException.DatabaseBusyException;
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostUpdate;
+import dev.william.willson.post.PostWriteBehind;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class PostWriteBehindTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private PostWriteBehind writeBehind(int capacity, int batchSize, PostWriteBehind.Overflow overflow) {
+        return new PostWriteBehind(postRepository, true, capacity, batchSize, Duration.ofMillis(100), overflow);
+    }
+
+    private static Post stored(int id, int version) {
+        return new Post(id, 1, "Stored", "As in the database.", version);
+    }
+
+    @Test
+    public void PostWriteBehind_UpdateSamePostRepeatedly_FlushesLastWriteOnce() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 10, PostWriteBehind.Overflow.SYNC);
+        when(postRepository.updateAll(anyList())).thenReturn(new int[]{1});
+
+        Post first = writeBehind.enqueue(stored(1, 2), 2, "First", "One.");
+        Post second = writeBehind.enqueue(stored(1, 2), 3, "Second", "Two.");
+        Post third = writeBehind.enqueue(stored(1, 2), null, "Third", "Three.");
+        writeBehind.flush();
+
+        // Every accepted body has a version, and so an ETag, of its own
+        assertThat(List.of(first, second, third)).extracting(Post::version).containsExactly(3, 4, 5);
+        verify(postRepository, times(1)).updateAll(List.of(new PostUpdate(new Post(1, 1, "Third", "Three.", 5), 2)));
+    }
+
+    @Test
+    public void PostWriteBehind_UpdateWithStaleVersion_ThrowsConflict() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 10, PostWriteBehind.Overflow.SYNC);
+        writeBehind.enqueue(stored(1, 2), null, "First", "One.");
+
+        assertThatThrownBy(() -> writeBehind.enqueue(stored(1, 2), 2, "Second", "Two."))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThatThrownBy(() -> writeBehind.enqueue(stored(2, 7), 6, "Other", "Post."))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    public void PostWriteBehind_QueueFull_LeavesWriteToCallerOrRejects() throws Exception {
+        PostWriteBehind sync = writeBehind(1, 10, PostWriteBehind.Overflow.SYNC);
+        sync.enqueue(stored(1, 0), null, "First", "One.");
+        assertThat(sync.enqueue(stored(2, 0), null, "Second", "Two.")).isNull();
+        // a post that is already queued still coalesces
+        assertThat(sync.enqueue(stored(1, 0), null, "Again", "One more.")).isNotNull();
+
+        PostWriteBehind reject = writeBehind(1, 10, PostWriteBehind.Overflow.REJECT);
+        reject.enqueue(stored(1, 0), null, "First", "One.");
+        assertThatThrownBy(() -> reject.enqueue(stored(2, 0), null, "Second", "Two."))
+                .isInstanceOf(DatabaseBusyException.class);
+    }
+
+    @Test
+    public void PostWriteBehind_Flush_WritesInBatches() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 2, PostWriteBehind.Overflow.SYNC);
+        when(postRepository.updateAll(anyList())).thenAnswer(invocation -> new int[invocation.getArgument(0, List.class).size()]);
+        for (int id = 1; id <= 3; id++) {
+            writeBehind.enqueue(stored(id, 0), null, "Title " + id, "Body.");
+        }
+
+        writeBehind.flush();
+
+        verify(postRepository, times(2)).updateAll(anyList());
+    }
+
+    @Test
+    public void PostWriteBehind_FlushFails_RetriesOnNextFlush() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 10, PostWriteBehind.Overflow.SYNC);
+        when(postRepository.updateAll(anyList()))
+                .thenThrow(new TransientDataAccessResourceException("Connection refused"))
+                .thenReturn(new int[]{1});
+        writeBehind.enqueue(stored(1, 0), null, "First", "One.");
+
+        writeBehind.flush();
+        verify(postRepository, times(1)).updateAll(anyList());
+        writeBehind.flush();
+
+        verify(postRepository, times(2)).updateAll(List.of(new PostUpdate(new Post(1, 1, "First", "One.", 1), null)));
+    }
+
+    @Test
+    public void PostWriteBehind_InFlightWriteConflicts_DropsWriteChainedOntoIt() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 10, PostWriteBehind.Overflow.SYNC);
+        writeBehind.enqueue(stored(1, 2), 2, "First", "One.");
+        Post[] chained = new Post[1];
+        when(postRepository.updateAll(anyList())).thenAnswer(invocation -> {
+            // Accepted while the first write is being flushed, against the version it was going to commit
+            chained[0] = writeBehind.enqueue(stored(1, 2), 3, "Second", "Two.");
+            return new int[]{0};
+        });
+
+        writeBehind.flush();
+        writeBehind.flush();
+
+        assertThat(chained[0].version()).isEqualTo(4);
+        verify(postRepository, times(1)).updateAll(anyList());
+    }
+
+    @Test
+    public void PostWriteBehind_InFlightWriteFails_RetriesWriteChainedOntoItUnderItsCheck() throws Exception {
+        PostWriteBehind writeBehind = writeBehind(10, 10, PostWriteBehind.Overflow.SYNC);
+        writeBehind.enqueue(stored(1, 2), 2, "First", "One.");
+        when(postRepository.updateAll(anyList()))
+                .thenAnswer(invocation -> {
+                    writeBehind.enqueue(stored(1, 2), 3, "Second", "Two.");
+                    throw new TransientDataAccessResourceException("Connection refused");
+                })
+                .thenReturn(new int[]{1});
+
+        writeBehind.flush();
+        writeBehind.flush();
+
+        verify(postRepository).updateAll(List.of(new PostUpdate(new Post(1, 1, "Second", "Two.", 4), 2)));
+    }
+}
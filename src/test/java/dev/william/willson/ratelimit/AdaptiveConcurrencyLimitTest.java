@@ -0,0 +1,64 @@
+package dev.william.willson.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void AdaptiveConcurrencyLimit_AtLimit_RejectsUntilReleased() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 2.0);
+
+        assertThat(limit.tryAcquire()).isEqualTo(1);
+        assertThat(limit.tryAcquire()).isEqualTo(2);
+        assertThat(limit.tryAcquire()).isZero();
+        limit.release();
+        assertThat(limit.tryAcquire()).isEqualTo(2);
+    }
+
+    @Test
+    public void AdaptiveConcurrencyLimit_SteadyLatencyUnderLoad_Grows() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 5, 100, 2.0);
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(10 * MILLI, 20);
+        }
+
+        assertThat(limit.getLimit()).isGreaterThan(20);
+        // but not while most of it goes unused
+        AdaptiveConcurrencyLimit idle = new AdaptiveConcurrencyLimit(20, 5, 100, 2.0);
+        for (int i = 0; i < 100; i++) {
+            idle.onSample(10 * MILLI, 2);
+        }
+        assertThat(idle.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void AdaptiveConcurrencyLimit_LatencyClimbs_Shrinks() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 5, 100, 2.0);
+        for (int i = 0; i < 500; i++) {
+            limit.onSample(10 * MILLI, 50);
+        }
+        int before = limit.getLimit();
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(200 * MILLI, limit.getLimit());
+        }
+
+        assertThat(limit.getLimit()).isLessThan(before / 2).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    public void AdaptiveConcurrencyLimit_DroppedDownstream_BacksOff() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(100, 5, 100, 2.0);
+
+        limit.onDropped();
+
+        assertThat(limit.getLimit()).isEqualTo(90);
+    }
+}
@@ -0,0 +1,76 @@
+package dev.william.willson.ratelimit;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostController;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostWriteBehind;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(PostController.class)
+@Import({PostPageCache.class, PostHotStore.class})
+@TestPropertySource(properties = {"posts.rate-limit.read.rate=1", "posts.rate-limit.read.burst=2"})
+public class LoadSheddingFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private PostRepository postRepository;
+
+    @MockitoBean
+    private PostWriteBehind postWriteBehind;
+
+    static RequestPostProcessor from(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+    @Test
+    public void LoadSheddingFilter_ClientOverRate_Returns429WithRetryAfter() throws Exception {
+        when(postRepository.findById(1)).thenReturn(Optional.of(new Post(1, 1, "Hello world", "This is my first post.", 0)));
+
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.1"))).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.1"))).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.1")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        // Other clients, and other endpoint groups of the same client, have buckets of their own
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.2"))).andExpect(status().isOk());
+        when(postRepository.insertAll(List.of())).thenReturn(new int[0]);
+        mockMvc.perform(post("/api/posts/bulk").with(from("10.0.0.1"))
+                        .contentType("application/json").content("[]"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void LoadSheddingFilter_ClientPicksNewIdEachRequest_StillReturns429() throws Exception {
+        when(postRepository.findById(1)).thenReturn(Optional.of(new Post(1, 1, "Hello world", "This is my first post.", 0)));
+
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.3")).header("X-Client-Id", "a")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.3")).header("X-Client-Id", "b")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.3")).header("X-Client-Id", "c"))
+                .andExpect(status().isTooManyRequests());
+    }
+}
@@ -0,0 +1,50 @@
+package dev.william.willson.ratelimit;
+
+import dev.william.willson.post.Post;
+import dev.william.willson.post.PostController;
+import dev.william.willson.post.PostHotStore;
+import dev.william.willson.post.PostPageCache;
+import dev.william.willson.post.PostRepository;
+import dev.william.willson.post.PostWriteBehind;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Optional;
+
+import static dev.william.willson.ratelimit.LoadSheddingFilterTest.from;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Behind a gateway that sets the client header, clients sharing its address are told apart by the header
+@WebMvcTest(PostController.class)
+@Import({PostPageCache.class, PostHotStore.class})
+@TestPropertySource(properties = {"posts.rate-limit.read.rate=1", "posts.rate-limit.read.burst=2",
+        "posts.rate-limit.trust-client-header=true"})
+public class LoadSheddingFilterTrustedHeaderTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private PostRepository postRepository;
+
+    @MockitoBean
+    private PostWriteBehind postWriteBehind;
+
+    @Test
+    public void LoadSheddingFilter_TrustedClientHeader_KeysOnHeader() throws Exception {
+        when(postRepository.findById(1)).thenReturn(Optional.of(new Post(1, 1, "Hello world", "This is my first post.", 0)));
+
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.9")).header("X-Client-Id", "greedy")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.9")).header("X-Client-Id", "greedy")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.9")).header("X-Client-Id", "greedy"))
+                .andExpect(status().isTooManyRequests());
+        mockMvc.perform(get("/api/posts/1").with(from("10.0.0.9")).header("X-Client-Id", "patient")).andExpect(status().isOk());
+    }
+}